@@ -0,0 +1,222 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import com.google.gson.reflect.TypeToken;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.DeletionPlan;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.GitubRestApiReleaseAccess;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Release;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ReleaseIndex;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RetentionPolicy;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RetentionRules;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for the listing, parsing and filtering hot paths.
+ *
+ * <p>Pages are made of 100 releases with the JSON shape of the GitHub REST API (see {@code
+ * ReleaseTest.SAMPLE}). Parsing benchmarks parse {@code size / 100} pages, so the dataset does not
+ * have to be held in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReleaseBenchmark {
+
+  static final int PAGE_SIZE = 100;
+
+  static final String RELEASE_TEMPLATE =
+      """
+      {
+        "url": "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/{id}",
+        "assets_url": "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/{id}/assets",
+        "upload_url": "https://uploads.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/{id}/assets{?name,label}",
+        "html_url": "https://github.com/rabbitmq/rabbitmq-server-binaries-dev/releases/tag/{tag}",
+        "id": {id},
+        "author": {
+          "login": "rabbitmq-ci",
+          "id": 71012429,
+          "node_id": "MDQ6VXNlcjcxMDEyNDI5",
+          "avatar_url": "https://avatars.githubusercontent.com/u/71012429?v=4",
+          "gravatar_id": "",
+          "url": "https://api.github.com/users/rabbitmq-ci",
+          "html_url": "https://github.com/rabbitmq-ci",
+          "followers_url": "https://api.github.com/users/rabbitmq-ci/followers",
+          "following_url": "https://api.github.com/users/rabbitmq-ci/following{/other_user}",
+          "gists_url": "https://api.github.com/users/rabbitmq-ci/gists{/gist_id}",
+          "starred_url": "https://api.github.com/users/rabbitmq-ci/starred{/owner}{/repo}",
+          "subscriptions_url": "https://api.github.com/users/rabbitmq-ci/subscriptions",
+          "organizations_url": "https://api.github.com/users/rabbitmq-ci/orgs",
+          "repos_url": "https://api.github.com/users/rabbitmq-ci/repos",
+          "events_url": "https://api.github.com/users/rabbitmq-ci/events{/privacy}",
+          "received_events_url": "https://api.github.com/users/rabbitmq-ci/received_events",
+          "type": "User",
+          "site_admin": false
+        },
+        "node_id": "MDc6UmVsZWFzZTM5MDQ1MzA2",
+        "tag_name": "{tag}",
+        "target_commitish": "master",
+        "name": "{tag}",
+        "draft": false,
+        "prerelease": true,
+        "created_at": "{date}",
+        "published_at": "{date}",
+        "assets": [
+          {
+            "url": "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/assets/32772090",
+            "id": 32772090,
+            "node_id": "MDEyOlJlbGVhc2VBc3NldDMyNzcyMDkw",
+            "name": "rabbitmq-server-generic-unix-{tag}.tar.xz",
+            "label": "",
+            "uploader": {
+              "login": "rabbitmq-ci",
+              "id": 71012429,
+              "node_id": "MDQ6VXNlcjcxMDEyNDI5",
+              "avatar_url": "https://avatars.githubusercontent.com/u/71012429?v=4",
+              "gravatar_id": "",
+              "url": "https://api.github.com/users/rabbitmq-ci",
+              "html_url": "https://github.com/rabbitmq-ci",
+              "followers_url": "https://api.github.com/users/rabbitmq-ci/followers",
+              "following_url": "https://api.github.com/users/rabbitmq-ci/following{/other_user}",
+              "gists_url": "https://api.github.com/users/rabbitmq-ci/gists{/gist_id}",
+              "starred_url": "https://api.github.com/users/rabbitmq-ci/starred{/owner}{/repo}",
+              "subscriptions_url": "https://api.github.com/users/rabbitmq-ci/subscriptions",
+              "organizations_url": "https://api.github.com/users/rabbitmq-ci/orgs",
+              "repos_url": "https://api.github.com/users/rabbitmq-ci/repos",
+              "events_url": "https://api.github.com/users/rabbitmq-ci/events{/privacy}",
+              "received_events_url": "https://api.github.com/users/rabbitmq-ci/received_events",
+              "type": "User",
+              "site_admin": false
+            },
+            "content_type": "application/octet-stream",
+            "state": "uploaded",
+            "size": 21,
+            "download_count": 2,
+            "created_at": "{date}",
+            "updated_at": "{date}",
+            "browser_download_url": "https://github.com/rabbitmq/rabbitmq-server-binaries-dev/releases/download/{tag}/rabbitmq-server-generic-unix-{tag}.tar.xz"
+          }
+        ],
+        "tarball_url": "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/tarball/{tag}",
+        "zipball_url": "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/zipball/{tag}",
+        "body": ""
+      }""";
+
+  static final String LINK_HEADER =
+      "<https://api.github.com/repositories/343344332/releases?per_page=100&page=2>; rel=\"next\", "
+          + "<https://api.github.com/repositories/343344332/releases?per_page=100&page=1000>; rel=\"last\"";
+
+  static final String TAG_FILTER = "^v3.9.0-alpha-stream.[0-9]+$";
+
+  @Param({"1000", "10000", "100000"})
+  int size;
+
+  List<Release> releases;
+  ReleaseIndex index;
+  byte[] page;
+  String pageAsString;
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    ZonedDateTime start = ZonedDateTime.parse("2021-01-01T00:00:00Z");
+    releases = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      releases.add(
+          new Release(
+              i,
+              "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/" + i,
+              tag(i),
+              start.plusSeconds(random.nextInt(100_000_000))));
+    }
+    index = ReleaseIndex.of(releases);
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      if (i > 0) {
+        builder.append(",");
+      }
+      builder.append(
+          RELEASE_TEMPLATE
+              .replace("{id}", String.valueOf(39045306 + i))
+              .replace("{tag}", tag(i))
+              .replace("{date}", start.plusHours(i).toString()));
+    }
+    pageAsString = builder.append("]").toString();
+    page = pageAsString.getBytes(StandardCharsets.UTF_8);
+  }
+
+  static String tag(int i) {
+    // half of the releases match the tag filter
+    return i % 2 == 0 ? "v3.9.0-alpha-stream." + i : "v3.8." + i + "-alpha.1";
+  }
+
+  @Benchmark
+  public DeletionPlan indexRetention() {
+    return new RetentionPolicy(Pattern.compile(TAG_FILTER), 10, 0, null, false, false)
+        .plan(index, Instant.now());
+  }
+
+  /** Several rules against the same listing, with the per-minor policy, as in a typical run. */
+  @Benchmark
+  public DeletionPlan rulesRetention() {
+    return new RetentionRules(
+            List.of(
+                new RetentionPolicy(Pattern.compile(TAG_FILTER), 10, 3, null, false, false),
+                new RetentionPolicy(
+                    Pattern.compile("^v3.8.[0-9]+-alpha.1$"), 10, 3, null, false, false)))
+        .plan(index, Instant.now());
+  }
+
+  @Benchmark
+  public Map<String, String> links() {
+    return GitubRestApiReleaseAccess.links(LINK_HEADER);
+  }
+
+  @Benchmark
+  public void gsonDeserialization(Blackhole bh) {
+    Type type = TypeToken.getParameterized(List.class, Release.class).getType();
+    for (int i = 0; i < size / PAGE_SIZE; i++) {
+      List<Release> parsed = GithubReleaseDeleteResource.GSON.fromJson(pageAsString, type);
+      bh.consume(parsed);
+    }
+  }
+
+  /** The parsing of listed pages, into the index the retention works on. */
+  @Benchmark
+  public void indexParsing(Blackhole bh) throws IOException {
+    ReleaseIndex.Builder builder = new ReleaseIndex.Builder();
+    for (int i = 0; i < size / PAGE_SIZE; i++) {
+      GithubReleaseDeleteResource.parseReleases(new ByteArrayInputStream(page), builder);
+    }
+    bh.consume(builder.build());
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the startup time of the JAR and of the native executable.
+ *
+ * <p>Each invocation starts a new process running the {@code in} command. Build the JAR and the
+ * native executable first with {@code make package-native}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+
+  static final String INPUT =
+      "{ \"source\": { \"owner\": \"rabbitmq\", \"repository\": \"rabbitmq-server\","
+          + " \"access_token\": \"42\" },"
+          + " \"params\": { \"tag_filter\": \".*\", \"keep_last_n\": 2 } }";
+
+  @Param({"jar", "native"})
+  String launcher;
+
+  List<String> command;
+
+  @Setup
+  public void setUp() {
+    File executable;
+    if ("jar".equals(launcher)) {
+      executable = new File("target/github-release-delete-resource.jar");
+      command =
+          List.of(
+              System.getProperty("java.home") + "/bin/java",
+              "-jar",
+              executable.getAbsolutePath(),
+              "in");
+    } else {
+      executable = new File("target/github-release-delete-resource");
+      command = List.of(executable.getAbsolutePath(), "in");
+    }
+    if (!executable.exists()) {
+      throw new IllegalStateException(
+          executable + " does not exist, build it with 'make package-native'");
+    }
+  }
+
+  @Benchmark
+  public int start() throws Exception {
+    Process process =
+        new ProcessBuilder(command)
+            .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+            .redirectError(ProcessBuilder.Redirect.DISCARD)
+            .start();
+    try (OutputStream in = process.getOutputStream()) {
+      in.write(INPUT.getBytes(StandardCharsets.UTF_8));
+    }
+    return process.waitFor();
+  }
+}
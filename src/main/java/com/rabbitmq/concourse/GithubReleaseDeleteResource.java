@@ -7,272 +7,4566 @@ package com.rabbitmq.concourse;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.net.URI;
+import java.net.URLEncoder;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
 import java.net.http.HttpRequest.Builder;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.Scanner;
+import java.util.OptionalLong;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
 
 public class GithubReleaseDeleteResource {
 
   static final Gson GSON =
       new GsonBuilder()
-          .registerTypeAdapter(ZonedDateTime.class, new ZonedDateTimeDeserializer())
+          .registerTypeAdapter(Input.class, new InputTypeAdapter())
+          .registerTypeAdapter(Params.class, new ParamsTypeAdapter())
+          .registerTypeAdapter(Source.class, new SourceTypeAdapter())
+          .registerTypeAdapter(Release.class, new ReleaseTypeAdapter())
           .create();
+  static final String REPORT_FILE = "metrics.json";
+  static final String TAG_REF_PREFIX = "refs/tags/";
+  static final LogSink LOG = LogSink.console();
   private static final String JSON_DELETED_VERSION =
       "{\n" + "  \"version\": { \"version\": \"<DELETED>\" },\n" + "  \"metadata\": [ ]\n" + "}";
 
   public static void main(String[] args) {
-    Scanner scanner = new Scanner(System.in);
-    StringBuilder builder = new StringBuilder();
-    while (scanner.hasNextLine()) {
-      String line = scanner.nextLine();
-      builder.append(line);
+    String command = args[0];
+    try {
+      if ("in".equals(command)) {
+        Input input = input(System.in);
+        if (input == null
+            || input.version() == null
+            || "<DELETED>".equals(input.version().get("version"))) {
+          log("Getting special version <DELETED> is a no-op; returning it as is");
+          out(JSON_DELETED_VERSION);
+        } else {
+          log("Getting a version of the releases is a no-op; returning it as is");
+          JsonObject result = GSON.toJsonTree(Map.of("version", input.version())).getAsJsonObject();
+          result.add("metadata", new JsonArray());
+          out(new GsonBuilder().setPrettyPrinting().create().toJson(result));
+        }
+      } else if ("check".equals(command)) {
+        Input input = input(System.in);
+        RequestScheduler scheduler =
+            scheduler(input.source(), GitubRestApiReleaseAccess.MAX_IN_FLIGHT_PAGES, new Metrics());
+        Map<String, String> current =
+            checkVersion(input.source(), repositories(input.source(), scheduler), scheduler);
+        List<Map<String, String>> versions = check(input.version(), current);
+        out(new GsonBuilder().setPrettyPrinting().create().toJson(versions));
+      } else if ("out".equals(command)) {
+        long start = System.nanoTime();
+        Input input = input(System.in);
+        Metrics metrics = new Metrics();
+        RequestScheduler scheduler = scheduler(input, metrics);
+        prefetch(input, scheduler);
+        LOG.verbose(input.params().verbose());
+        List<String> repositories = repositories(input.source(), scheduler);
+        input.params().rules().forEach(r -> logGreen("Tag filter: " + r.tagFilter()));
+
+        List<RepositorySummary> summaries = cleanUp(input, repositories, scheduler);
+
+        summaries.forEach(
+            s -> {
+              String summary =
+                  input.source().owner()
+                      + "/"
+                      + s.repository()
+                      + ": "
+                      + s.kept()
+                      + " kept, "
+                      + s.deleted()
+                      + " deleted, "
+                      + s.failures()
+                      + " failure(s)";
+              if (s.orphanedTags() > 0) {
+                summary += ", " + s.orphanedTags() + " orphaned tag(s) deleted";
+              }
+              if (s.remaining() > 0) {
+                summary += ", " + s.remaining() + " left for a next run";
+              }
+              if (s.error() != null) {
+                logRed(summary + ", error: " + s.error().getMessage());
+              } else if (s.failures() > 0) {
+                logRed(summary);
+              } else if (s.remaining() > 0) {
+                logYellow(summary);
+              } else {
+                logGreen(summary);
+              }
+            });
+
+        Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        if (args.length > 1) {
+          writeReport(Path.of(args[1]), metrics.report(duration, summaries, scheduler.remaining()));
+        }
+        out(version(metrics.metadata(duration, summaries, scheduler.remaining())));
+      } else if ("test".equals(command)) {
+        testSequence();
+      } else if ("bench".equals(command)) {
+        bench(input(System.in).source());
+      } else {
+        throw new IllegalArgumentException("command not supported: " + command);
+      }
+    } finally {
+      // the log thread is a daemon
+      LOG.flush();
+    }
+  }
+
+  /** Parses the input as it is read, null if there is none. */
+  static Input input(InputStream in) {
+    return GSON.fromJson(
+        new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)), Input.class);
+  }
+
+  /**
+   * Requests the first page of releases of the first repository in the background.
+   *
+   * <p>The TLS handshake and the first page then overlap with the rest of the startup (repository
+   * resolution, compilation of the tag filters, etc). Nothing is prefetched with a repository regex
+   * or the GraphQL API, nor when a deletion journal is there: the run is likely to resume it
+   * without listing, and the response would only use the rate limit.
+   *
+   * <p>The prefetch starts once the whole input is parsed, not as soon as the source is read: the
+   * scheduler and the journal check need the params. The input is a small document, parsing it is
+   * short compared to the TLS handshake.
+   */
+  static void prefetch(Input input, RequestScheduler scheduler) {
+    Source source = input.source();
+    List<String> repositories = source.repositories();
+    if (repositories.isEmpty() || "graphql".equals(source.api())) {
+      return;
+    }
+    DeletionJournal journal =
+        input.params().pipelined() ? null : DeletionJournal.of(input, repositories.get(0));
+    if (journal == null || !journal.exists()) {
+      new GitubRestApiReleaseAccess(source, repositories.get(0), scheduler).prefetchFirstPage();
+    }
+  }
+
+  static RequestScheduler scheduler(Input input, Metrics metrics) {
+    return scheduler(
+        input.source(),
+        Math.max(input.params().parallelism(), GitubRestApiReleaseAccess.MAX_IN_FLIGHT_PAGES),
+        metrics);
+  }
+
+  static RequestScheduler scheduler(Source source, int maxConcurrency, Metrics metrics) {
+    HttpClient.Builder builder = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(60));
+    if (source.apiUrl().startsWith("http:")) {
+      // no ALPN on cleartext, HTTP/2 upgrade attempts slow down every request
+      builder.version(HttpClient.Version.HTTP_1_1);
+    }
+    HttpClient client = builder.build();
+    return new RequestScheduler(
+        client,
+        maxConcurrency,
+        metrics,
+        source.requestTimeout(),
+        RequestScheduler.DEFAULT_RETRY_BASE_DELAY);
+  }
+
+  /**
+   * The version of the releases matching the {@code tag_filter} of the source.
+   *
+   * <p>Only the first page of releases of each repository is requested: new releases are listed
+   * first, so they change it. With a cache directory, the page is requested with its ETag and a 304
+   * response is not parsed again (nor counted in the rate limit by GitHub).
+   */
+  static Map<String, String> checkVersion(
+      Source source, List<String> repositories, RequestScheduler scheduler) {
+    Pattern filter = source.tagFilter() == null ? null : Pattern.compile(source.tagFilter());
+    StringBuilder content = new StringBuilder();
+    long newest = -1;
+    int count = 0;
+    for (String repository : repositories) {
+      GitubRestApiReleaseAccess access =
+          new GitubRestApiReleaseAccess(source, repository, scheduler);
+      ReleaseIndex releases = access.firstPage();
+      for (int i = 0; i < releases.size(); i++) {
+        String tag = releases.tagString(i);
+        if (tag != null && (filter == null || filter.matcher(tag).matches())) {
+          content.append(repository).append(' ').append(releases.id(i)).append(' ');
+          content.append(tag).append('\n');
+          newest = Math.max(newest, releases.id(i));
+          count++;
+        }
+      }
+    }
+    Map<String, String> version = new LinkedHashMap<>();
+    version.put("digest", sha256(content.toString()));
+    if (newest >= 0) {
+      version.put("newest_release_id", String.valueOf(newest));
+    }
+    log(count + " release(s) matching in the first page(s), newest release id: " + newest);
+    return version;
+  }
+
+  /** The versions {@code check} emits: the current one, or the previous one if it is the same. */
+  static List<Map<String, String>> check(
+      Map<String, String> previous, Map<String, String> current) {
+    if (previous != null && Objects.equals(previous.get("digest"), current.get("digest"))) {
+      log("No new releases since the previous version");
+      return List.of(previous);
+    }
+    return List.of(current);
+  }
+
+  static String version(Map<String, String> metadata) {
+    JsonObject version = new JsonObject();
+    version.addProperty("version", "<DELETED>");
+    JsonArray entries = new JsonArray();
+    metadata.forEach(
+        (name, value) -> {
+          JsonObject entry = new JsonObject();
+          entry.addProperty("name", name);
+          entry.addProperty("value", value);
+          entries.add(entry);
+        });
+    JsonObject result = new JsonObject();
+    result.add("version", version);
+    result.add("metadata", entries);
+    return new GsonBuilder().setPrettyPrinting().create().toJson(result);
+  }
+
+  static void writeReport(Path destination, JsonObject report) {
+    try {
+      Files.createDirectories(destination);
+      Files.writeString(
+          destination.resolve(REPORT_FILE),
+          new GsonBuilder().setPrettyPrinting().create().toJson(report));
+    } catch (IOException e) {
+      logYellow("Could not write report in " + destination + ": " + e.getMessage());
+    }
+  }
+
+  static ReleaseAccess releaseAccess(Source source, String repository, RequestScheduler scheduler) {
+    if ("graphql".equals(source.api())) {
+      return new GithubGraphQlReleaseAccess(
+          source, repository, scheduler, URI.create(source.graphQlUrl()));
+    } else {
+      return new GitubRestApiReleaseAccess(source, repository, scheduler);
+    }
+  }
+
+  /** The names of the repositories to clean up, from the explicit list and the regex. */
+  static List<String> repositories(Source source, RequestScheduler scheduler) {
+    Set<String> repositories = new LinkedHashSet<>(source.repositories());
+    if (source.repositoryRegex() != null) {
+      repositories.addAll(
+          filterRepositories(
+              GitubRestApiReleaseAccess.listRepositories(source, scheduler),
+              source.repositoryRegex()));
+    }
+    if (repositories.isEmpty()) {
+      throw new IllegalArgumentException("No repository to clean up for owner " + source.owner());
+    }
+    return new ArrayList<>(repositories);
+  }
+
+  static List<String> filterRepositories(List<String> repositories, String regex) {
+    Pattern pattern = Pattern.compile(regex);
+    return repositories.stream()
+        .filter(r -> pattern.matcher(r).matches())
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Cleans up the repositories concurrently.
+   *
+   * <p>All the requests go through the same scheduler, so they share the same HTTP client and the
+   * same cap on in-flight requests.
+   */
+  static List<RepositorySummary> cleanUp(
+      Input input, List<String> repositories, RequestScheduler scheduler) {
+    RetentionRules rules = RetentionRules.of(input.params());
+    DeletionBudget budget = DeletionBudget.of(input.params(), scheduler.metrics());
+    if (repositories.size() == 1) {
+      return Collections.singletonList(
+          cleanUp(input, rules, budget, repositories.get(0), scheduler));
+    }
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      List<Future<RepositorySummary>> futures = new ArrayList<>(repositories.size());
+      for (String repository : repositories) {
+        futures.add(executor.submit(() -> cleanUp(input, rules, budget, repository, scheduler)));
+      }
+      List<RepositorySummary> summaries = new ArrayList<>(repositories.size());
+      for (Future<RepositorySummary> future : futures) {
+        summaries.add(future.get());
+      }
+      return summaries;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  static RepositorySummary cleanUp(
+      Input input,
+      RetentionRules rules,
+      DeletionBudget budget,
+      String repository,
+      RequestScheduler scheduler) {
+    try {
+      ReleaseAccess access = releaseAccess(input.source(), repository, scheduler);
+      if (input.params().pipelined()) {
+        return cleanUpPipelined(input, rules, budget, repository, access, scheduler);
+      }
+      DeletionJournal journal = DeletionJournal.of(input, repository);
+      List<Release> toDelete = journal == null ? null : journal.resume(Instant.now());
+      List<String> tags = null;
+      ReleaseIndex releases = null;
+      int kept;
+      if (toDelete != null) {
+        kept = journal.kept();
+        logGreen(
+            "Resuming the deletion plan of an interrupted run for "
+                + repository
+                + ", "
+                + toDelete.size()
+                + " release(s) to delete");
+      } else {
+        // tags are listed before releases, so the tag of a release created in between is not swept
+        tags = input.params().sweepOrphanedTags() ? access.listTags(rules.tagPrefix()) : null;
+        long listingStart = System.nanoTime();
+        // a narrowed listing misses drafts, their tags would look orphaned
+        releases = access.index(tags == null ? rules.tagPrefix() : "");
+        scheduler.metrics().listed(System.nanoTime() - listingStart);
+        DeletionPlan plan = rules.plan(releases, Instant.now());
+
+        logKept(plan.kept(), repository);
+        toDelete = plan.toDelete();
+        kept = plan.kept().size();
+        if (journal != null) {
+          journal.start(toDelete, kept, Instant.now());
+        }
+      }
+
+      List<Release> remaining = toDelete;
+      if (journal != null) {
+        remaining =
+            toDelete.stream()
+                .filter(r -> !journal.isReleaseDeleted(r.id()) || !journal.isTagDeleted(r.id()))
+                .toList();
+      }
+      DeletionEngine engine =
+          new DeletionEngine(access, input.params().parallelism(), journal, budget);
+      List<DeletionResult> results = engine.delete(remaining);
+      int failures = (int) results.stream().filter(r -> !r.succeeded()).count();
+      int left = remaining.size() - results.size();
+      int deleted = results.size() - failures;
+      int orphanedTagsDeleted = 0;
+      if (tags != null && left == 0) {
+        List<String> orphanedTags = orphanedTags(tags, releases, rules);
+        Map<String, Exception> tagFailures = engine.deleteOrphanedTags(orphanedTags);
+        orphanedTagsDeleted = orphanedTags.size() - tagFailures.size();
+        failures += tagFailures.size();
+      }
+      engine.logRemoved(repository);
+      if (journal != null && left == 0) {
+        // the journal is kept for the next run to resume otherwise
+        journal.complete();
+      }
+      return new RepositorySummary(
+          repository, kept, deleted, failures, orphanedTagsDeleted, left, null);
+    } catch (Exception e) {
+      logRed("Error while cleaning up repository " + repository + ": " + e.getMessage());
+      return new RepositorySummary(repository, 0, 0, 0, e);
+    }
+  }
+
+  private static void testSequence() {
+    Consumer<String> display = m -> logGreen(m);
+    String message;
+    int exitCode = 0;
+    try {
+      String testUri = "https://www.wikipedia.org/";
+      logYellow("Starting test sequence, trying to reach " + testUri);
+      HttpRequest request = HttpRequest.newBuilder().uri(new URI(testUri)).GET().build();
+      HttpResponse<Void> response =
+          HttpClient.newBuilder()
+              .connectTimeout(Duration.ofSeconds(60))
+              .build()
+              .send(request, BodyHandlers.discarding());
+      int statusClass = response.statusCode() - response.statusCode() % 100;
+      message = "Response code is " + response.statusCode();
+      if (statusClass != 200) {
+        display = m -> logRed(m);
+        exitCode = 1;
+      }
+    } catch (Exception e) {
+      message = "Error during test sequence: " + e.getMessage();
+      display = m -> logRed(m);
+      exitCode = 1;
+    }
+    display.accept(message);
+    LOG.flush();
+    System.exit(exitCode);
+  }
+
+  private static void bench(Source source) {
+    try {
+      List<String> repositories = source.repositories();
+      if (repositories.isEmpty()) {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(60)).build();
+        repositories = repositories(source, new RequestScheduler(client, 1));
+      }
+      JsonObject report = new ApiBenchmark(source, repositories.get(0)).run();
+      LOG.flush();
+      out(new GsonBuilder().setPrettyPrinting().create().toJson(report));
+    } catch (Exception e) {
+      logRed("Error during benchmark: " + e.getMessage());
+      LOG.flush();
+      System.exit(1);
+    }
+  }
+
+  static void logGreen(String message) {
+    log("\u001B[32m" + message + "\u001B[0m");
+  }
+
+  static void logYellow(String message) {
+    log("\u001B[33m" + message + "\u001B[0m");
+  }
+
+  static void logRed(String message) {
+    log("\u001B[31m" + message + "\u001B[0m");
+  }
+
+  static void log(String message) {
+    LOG.log(message);
+  }
+
+  /** Logs the kept releases, one line per release in verbose mode, a sample of them otherwise. */
+  static void logKept(Collection<Release> kept, String repository) {
+    if (LOG.verbose()) {
+      kept.forEach(r -> log(" Keeping release with tag " + r.tag()));
+    } else if (!kept.isEmpty()) {
+      TagSample sample = new TagSample();
+      kept.forEach(r -> sample.add(r.tag()));
+      log("Keeping " + sample.describe("release(s)") + " in " + repository);
+    }
+  }
+
+  static void out(String message) {
+    System.out.println(message);
+  }
+
+  /**
+   * Deletes releases while they are listed, see {@link StreamingRetention}.
+   *
+   * <p>Listing and deletion latencies overlap, and memory does not depend on the number of
+   * releases: the listing waits for the deletions, and the ids of the deleted releases are
+   * forgotten once their page cannot be listed again. Releases are deleted in listing order, there
+   * is no journal and orphaned tags are not swept. The pages are listed from the oldest, so the
+   * deletions do not shift the pages not listed yet. Releases listed twice because of other changes
+   * in between are deleted once.
+   */
+  static RepositorySummary cleanUpPipelined(
+      Input input,
+      RetentionRules rules,
+      DeletionBudget budget,
+      String repository,
+      ReleaseAccess access,
+      RequestScheduler scheduler) {
+    if (input.params().sweepOrphanedTags()) {
+      logYellow("Orphaned tags are not swept when deleting releases while listing them");
+    }
+    StreamingRetention retention = rules.streaming(Instant.now());
+    DeletionEngine engine = new DeletionEngine(access, input.params().parallelism(), null, budget);
+    DeletionEngine.Pipeline pipeline = engine.pipeline();
+    // the ids submitted by the last pages, older pages are not fetched again
+    Deque<Set<Long>> submitted = new ArrayDeque<>();
+    long listingStart = System.nanoTime();
+    try (pipeline) {
+      access.listPagesOldestFirst(
+          rules.tagPrefix(),
+          page -> {
+            Set<Long> pageSubmitted = new HashSet<>();
+            for (int i = 0; i < page.size(); i++) {
+              for (Release release : retention.offer(page, i)) {
+                if (submitted.stream().noneMatch(ids -> ids.contains(release.id()))
+                    && pageSubmitted.add(release.id())) {
+                  pipeline.submit(release);
+                }
+              }
+            }
+            submitted.addLast(pageSubmitted);
+            if (submitted.size() > GitubRestApiReleaseAccess.MAX_PAGES_AHEAD + 1) {
+              submitted.removeFirst();
+            }
+          });
+      scheduler.metrics().listed(System.nanoTime() - listingStart);
+    }
+    logKept(retention.kept(), repository);
+    engine.logRemoved(repository);
+    return new RepositorySummary(
+        repository,
+        retention.keptCount(),
+        pipeline.deleted(),
+        pipeline.failures(),
+        0,
+        pipeline.remaining(),
+        null);
+  }
+
+  /**
+   * The tags that match a rule and have no release.
+   *
+   * <p>They are usually left behind by a previous run that deleted a release but failed to delete
+   * its tag.
+   */
+  static List<String> orphanedTags(List<String> tags, ReleaseIndex releases, RetentionRules rules) {
+    Set<String> releaseTags = new HashSet<>(releases.size());
+    for (int i = 0; i < releases.size(); i++) {
+      releaseTags.add(releases.tagString(i));
+    }
+    List<String> orphanedTags = new ArrayList<>();
+    for (String tag : tags) {
+      if (!releaseTags.contains(tag) && rules.matches(tag)) {
+        orphanedTags.add(tag);
+      }
+    }
+    return orphanedTags;
+  }
+
+  static String sha256(String value) {
+    try {
+      byte[] digest =
+          MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+      return HexFormat.of().formatHex(digest);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Computes which releases to delete, according to a combination of retention policies.
+   *
+   * <p>A release matching the tag filter is deleted only if no policy keeps it: it is not one of
+   * the {@code keep_last_n} newest releases, not one of the {@code keep_last_n_per_minor} newest
+   * releases of its semver minor line, not younger than {@code max_age}, and not a skipped draft or
+   * prerelease. Unpublished releases are considered the newest.
+   *
+   * <p>The selection works on a {@link ReleaseIndex}: positions are sorted on primitive arrays and
+   * walked once from the newest, so only the releases of the plan are materialized.
+   */
+  static class RetentionPolicy {
+
+    private static final Pattern MINOR_LINE = Pattern.compile("([0-9]+)\\.([0-9]+)\\.[0-9]+");
+    private static final String REGEX_METACHARACTERS = ".[]()*+?{}|$^";
+    private static final String URL_SAFE_CHARACTERS = "-._~/+";
+
+    private final Pattern tagFilter;
+    private final String tagPrefix;
+    private final int keepLastN;
+    private final int keepLastNPerMinor;
+    private final Duration maxAge;
+    private final boolean skipDrafts;
+    private final boolean skipPrereleases;
+
+    RetentionPolicy(
+        Pattern tagFilter,
+        int keepLastN,
+        int keepLastNPerMinor,
+        Duration maxAge,
+        boolean skipDrafts,
+        boolean skipPrereleases) {
+      this.tagFilter = tagFilter;
+      this.tagPrefix = tagFilter == null ? "" : literalPrefix(tagFilter.pattern());
+      this.keepLastN = keepLastN;
+      this.keepLastNPerMinor = keepLastNPerMinor;
+      this.maxAge = maxAge;
+      this.skipDrafts = skipDrafts;
+      this.skipPrereleases = skipPrereleases;
+    }
+
+    static RetentionPolicy of(Rule rule, Params params) {
+      return new RetentionPolicy(
+          Pattern.compile(rule.tagFilter()),
+          rule.keepLastN(),
+          params.keepLastNPerMinor(),
+          params.maxAge(),
+          params.skipDrafts(),
+          params.skipPrereleases());
+    }
+
+    /** The prefix all the matching tags start with, can be empty. */
+    String tagPrefix() {
+      return tagPrefix;
+    }
+
+    boolean matches(CharSequence tag) {
+      return tagFilter == null || tagFilter.matcher(tag).matches();
+    }
+
+    DeletionPlan plan(List<Release> releases, Instant now) {
+      return new RetentionRules(List.of(this)).plan(releases, now);
+    }
+
+    DeletionPlan plan(ReleaseIndex index, Instant now) {
+      return new RetentionRules(List.of(this)).plan(index, now);
+    }
+
+    /**
+     * Marks the releases at the positions as kept or to delete.
+     *
+     * @param positions positions of releases matching the tag filter, oldest first
+     */
+    void classify(
+        ReleaseIndex index, int[] positions, int count, Instant now, BitSet kept, BitSet toDelete) {
+      long oldestToKeep = maxAge == null ? Long.MAX_VALUE : now.minus(maxAge).getEpochSecond();
+      int newest = 0;
+      Map<String, Integer> newestPerMinor = new HashMap<>();
+      for (int i = count - 1; i >= 0; i--) {
+        int position = positions[i];
+        if ((skipDrafts && index.draft(position))
+            || (skipPrereleases && index.prerelease(position))
+            || index.publication(position) > oldestToKeep) {
+          kept.set(position);
+          continue;
+        }
+        boolean keep = false;
+        if (newest < keepLastN) {
+          newest++;
+          keep = true;
+        }
+        if (keepLastNPerMinor > 0) {
+          String minorLine = minorLine(index.tag(position));
+          if (minorLine != null
+              && newestPerMinor.merge(minorLine, 1, Integer::sum) <= keepLastNPerMinor) {
+            keep = true;
+          }
+        }
+        if (keep) {
+          kept.set(position);
+        } else {
+          toDelete.set(position);
+        }
+      }
+    }
+
+    static String minorLine(CharSequence tag) {
+      Matcher matcher = MINOR_LINE.matcher(tag);
+      return matcher.find() ? matcher.group(1) + "." + matcher.group(2) : null;
+    }
+
+    /**
+     * The literal prefix of a regex used to match whole tags, e.g. {@code v3.9.0-alpha-stream.} for
+     * {@code ^v3\.9\.0-alpha-stream\.[0-9]+$}.
+     *
+     * <p>The extraction is conservative: it stops at the first construct that is not a literal
+     * character, drops a character made optional by a quantifier, and returns an empty prefix for
+     * alternations. It also stops at characters that would need escaping in a URL path.
+     */
+    static String literalPrefix(String regex) {
+      if (regex.indexOf('|') >= 0) {
+        return "";
+      }
+      StringBuilder prefix = new StringBuilder();
+      int i = regex.startsWith("^") ? 1 : 0;
+      while (i < regex.length()) {
+        char c = regex.charAt(i);
+        int next = i + 1;
+        if (c == '\\') {
+          if (next == regex.length() || Character.isLetterOrDigit(regex.charAt(next))) {
+            // character class (e.g. \d), quotation or back reference
+            break;
+          }
+          c = regex.charAt(next++);
+        } else if (REGEX_METACHARACTERS.indexOf(c) >= 0) {
+          break;
+        }
+        if (!Character.isLetterOrDigit(c) && URL_SAFE_CHARACTERS.indexOf(c) < 0) {
+          break;
+        }
+        char quantifier = next < regex.length() ? regex.charAt(next) : 0;
+        if (quantifier == '*' || quantifier == '?' || quantifier == '{') {
+          break;
+        }
+        prefix.append(c);
+        if (quantifier == '+') {
+          break;
+        }
+        i = next;
+      }
+      return prefix.toString();
+    }
+  }
+
+  /**
+   * Retention rules evaluated against the same listing.
+   *
+   * <p>Releases are dispatched to rules by the literal prefix of their tag filter, so a release is
+   * matched only against the regexes of the rules whose prefix its tag starts with. The retention
+   * of each rule is computed independently and a release is deleted only if all the rules it
+   * matches delete it.
+   */
+  static class RetentionRules {
+
+    private final List<RetentionPolicy> policies;
+    private final String tagPrefix;
+
+    RetentionRules(List<RetentionPolicy> policies) {
+      if (policies.isEmpty()) {
+        throw new IllegalArgumentException("At least one retention rule is required");
+      }
+      this.policies = policies;
+      String prefix = policies.get(0).tagPrefix();
+      for (RetentionPolicy policy : policies) {
+        prefix = commonPrefix(prefix, policy.tagPrefix());
+      }
+      this.tagPrefix = prefix;
+    }
+
+    static RetentionRules of(Params params) {
+      List<RetentionPolicy> policies = new ArrayList<>();
+      for (Rule rule : params.rules()) {
+        policies.add(RetentionPolicy.of(rule, params));
+      }
+      return new RetentionRules(policies);
+    }
+
+    private static String commonPrefix(String s1, String s2) {
+      int i = 0;
+      while (i < s1.length() && i < s2.length() && s1.charAt(i) == s2.charAt(i)) {
+        i++;
+      }
+      return s1.substring(0, i);
+    }
+
+    /** The prefix all the tags matching a rule start with, can be empty. */
+    String tagPrefix() {
+      return tagPrefix;
+    }
+
+    boolean matches(String tag) {
+      for (RetentionPolicy policy : policies) {
+        if (tag.startsWith(policy.tagPrefix()) && policy.matches(tag)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    DeletionPlan plan(List<Release> releases, Instant now) {
+      // the plan contains the original instances
+      return plan(ReleaseIndex.of(releases), now, releases::get);
+    }
+
+    DeletionPlan plan(ReleaseIndex index, Instant now) {
+      return plan(index, now, index::release);
+    }
+
+    /** Retention computed while the releases are listed. */
+    StreamingRetention streaming(Instant now) {
+      return new StreamingRetention(policies, now);
+    }
+
+    private DeletionPlan plan(ReleaseIndex index, Instant now, IntFunction<Release> release) {
+      int[] oldestFirst = index.oldestFirst();
+      int[][] matching = new int[policies.size()][];
+      int[] counts = new int[policies.size()];
+      for (int position : oldestFirst) {
+        for (int i = 0; i < policies.size(); i++) {
+          RetentionPolicy policy = policies.get(i);
+          if (index.tagStartsWith(position, policy.tagPrefix())
+              && policy.matches(index.tag(position))) {
+            if (matching[i] == null) {
+              matching[i] = new int[oldestFirst.length];
+            }
+            matching[i][counts[i]++] = position;
+          }
+        }
+      }
+      BitSet kept = new BitSet(index.size());
+      BitSet toDelete = new BitSet(index.size());
+      for (int i = 0; i < policies.size(); i++) {
+        if (matching[i] != null) {
+          policies.get(i).classify(index, matching[i], counts[i], now, kept, toDelete);
+        }
+      }
+      toDelete.andNot(kept);
+      return DeletionPlan.of(oldestFirst, kept, toDelete, release);
+    }
+  }
+
+  /**
+   * Retention computed while releases are listed, in any order.
+   *
+   * <p>Each rule keeps bounded heaps of the newest releases it matches, overall and by minor line.
+   * A release is deletable as soon as it is in no heap: enough newer releases have been listed for
+   * no rule to keep it, whatever the releases listed afterwards. Memory is then bounded by the
+   * number of kept releases, not by the number of releases. The final retention is the same as
+   * {@link RetentionRules#plan(ReleaseIndex, Instant)}.
+   */
+  static class StreamingRetention {
+
+    private static final Comparator<Candidate> OLDEST_FIRST =
+        Comparator.<Candidate>comparingLong(c -> c.publication).thenComparingLong(c -> c.id);
+
+    private final List<RetentionPolicy> policies;
+    private final long oldestToKeep;
+    private final List<PriorityQueue<Candidate>> newest = new ArrayList<>();
+    private final List<Map<String, PriorityQueue<Candidate>>> newestPerMinor = new ArrayList<>();
+    private final Map<Long, Candidate> candidates = new HashMap<>();
+    private int keptByPolicy;
+
+    StreamingRetention(List<RetentionPolicy> policies, Instant now) {
+      this.policies = policies;
+      Duration maxAge = policies.get(0).maxAge;
+      this.oldestToKeep = maxAge == null ? Long.MAX_VALUE : now.minus(maxAge).getEpochSecond();
+      for (int i = 0; i < policies.size(); i++) {
+        newest.add(new PriorityQueue<>(OLDEST_FIRST));
+        newestPerMinor.add(new HashMap<>());
+      }
+    }
+
+    /**
+     * Offers a listed release.
+     *
+     * @return the releases that can be deleted now
+     */
+    List<Release> offer(ReleaseIndex releases, int position) {
+      List<Integer> matching = new ArrayList<>(1);
+      for (int i = 0; i < policies.size(); i++) {
+        RetentionPolicy policy = policies.get(i);
+        if (releases.tagStartsWith(position, policy.tagPrefix())
+            && policy.matches(releases.tag(position))) {
+          matching.add(i);
+        }
+      }
+      if (matching.isEmpty() || candidates.containsKey(releases.id(position))) {
+        // a release listed twice (pages shifted) must not take two places in the heaps
+        return Collections.emptyList();
+      }
+      RetentionPolicy policy = policies.get(0);
+      if ((policy.skipDrafts && releases.draft(position))
+          || (policy.skipPrereleases && releases.prerelease(position))
+          || releases.publication(position) > oldestToKeep) {
+        keptByPolicy++;
+        return Collections.emptyList();
+      }
+      Candidate candidate =
+          new Candidate(
+              releases.id(position), releases.publication(position), releases.release(position));
+      List<Release> deletable = new ArrayList<>();
+      for (int i : matching) {
+        RetentionPolicy rule = policies.get(i);
+        if (rule.keepLastN > 0) {
+          offer(newest.get(i), candidate, rule.keepLastN, deletable);
+        }
+        if (rule.keepLastNPerMinor > 0) {
+          String minorLine = RetentionPolicy.minorLine(releases.tag(position));
+          if (minorLine != null) {
+            offer(
+                newestPerMinor
+                    .get(i)
+                    .computeIfAbsent(minorLine, k -> new PriorityQueue<>(OLDEST_FIRST)),
+                candidate,
+                rule.keepLastNPerMinor,
+                deletable);
+          }
+        }
+      }
+      if (candidate.heaps > 0) {
+        candidates.put(candidate.id, candidate);
+      } else {
+        deletable.add(candidate.release);
+      }
+      return deletable;
+    }
+
+    private void offer(
+        PriorityQueue<Candidate> heap, Candidate candidate, int capacity, List<Release> deletable) {
+      heap.offer(candidate);
+      candidate.heaps++;
+      if (heap.size() > capacity) {
+        // the oldest of the heap cannot be in the newest releases anymore
+        Candidate evicted = heap.poll();
+        evicted.heaps--;
+        if (evicted.heaps == 0 && evicted != candidate) {
+          candidates.remove(evicted.id);
+          deletable.add(evicted.release);
+        }
+      }
+    }
+
+    /** The releases kept so far, the final ones once all the releases are listed. */
+    Collection<Release> kept() {
+      return candidates.values().stream().map(c -> c.release).toList();
+    }
+
+    /** The number of releases kept, including the ones kept by the age, draft or prerelease. */
+    int keptCount() {
+      return keptByPolicy + candidates.size();
+    }
+
+    private static class Candidate {
+
+      private final long id;
+      private final long publication;
+      private final Release release;
+      private int heaps;
+
+      private Candidate(long id, long publication, Release release) {
+        this.id = id;
+        this.publication = publication;
+        this.release = release;
+      }
+    }
+  }
+
+  static class DeletionPlan {
+
+    private final List<Release> kept;
+    private final List<Release> toDelete;
+
+    DeletionPlan(List<Release> kept, List<Release> toDelete) {
+      this.kept = kept;
+      this.toDelete = toDelete;
+    }
+
+    /**
+     * The plan for releases at positions of an index.
+     *
+     * <p>The releases to delete are materialized, the kept releases only when they are accessed.
+     */
+    static DeletionPlan of(
+        int[] oldestFirst, BitSet kept, BitSet toDelete, IntFunction<Release> release) {
+      int[] keptPositions = new int[kept.cardinality()];
+      List<Release> deleted = new ArrayList<>(toDelete.cardinality());
+      int keptCount = 0;
+      for (int position : oldestFirst) {
+        if (kept.get(position)) {
+          keptPositions[keptCount++] = position;
+        } else if (toDelete.get(position)) {
+          deleted.add(release.apply(position));
+        }
+      }
+      List<Release> keptReleases =
+          new AbstractList<>() {
+            @Override
+            public Release get(int index) {
+              return release.apply(keptPositions[index]);
+            }
+
+            @Override
+            public int size() {
+              return keptPositions.length;
+            }
+          };
+      return new DeletionPlan(keptReleases, deleted);
+    }
+
+    List<Release> kept() {
+      return kept;
+    }
+
+    /** The releases to delete, oldest first. */
+    List<Release> toDelete() {
+      return toDelete;
+    }
+  }
+
+  static class DeletionEngine {
+
+    private final ReleaseAccess access;
+    private final int parallelism;
+    private final DeletionJournal journal;
+    private final DeletionBudget budget;
+    private final TagSample removedReleases = new TagSample();
+    private final TagSample removedTags = new TagSample();
+
+    DeletionEngine(ReleaseAccess access, int parallelism) {
+      this(access, parallelism, null, DeletionBudget.unlimited());
+    }
+
+    /**
+     * @param journal where confirmed deletions are recorded and looked up, can be null
+     * @param budget the limits the releases are deleted within
+     */
+    DeletionEngine(
+        ReleaseAccess access, int parallelism, DeletionJournal journal, DeletionBudget budget) {
+      this.access = access;
+      this.parallelism = Math.max(1, parallelism);
+      this.journal = journal;
+      this.budget = budget;
+    }
+
+    /**
+     * Deletes the releases and their tags with a bounded number of workers.
+     *
+     * <p>For a given release, the release is always deleted before its tag. If the access deletes
+     * tags in batches, the tags of the successfully deleted releases are deleted once all the
+     * releases are gone. Results are returned in the same order as the releases. Once the budget is
+     * exhausted, the remaining releases are not deleted and have no result.
+     */
+    List<DeletionResult> delete(List<Release> releases) {
+      if (releases.isEmpty()) {
+        return Collections.emptyList();
+      }
+      ExecutorService executor = executor();
+      try {
+        List<Callable<DeletionResult>> tasks = new ArrayList<>(releases.size());
+        for (Release release : releases) {
+          tasks.add(
+              () -> {
+                if (!budget.acquire()) {
+                  return null;
+                }
+                try {
+                  return delete(release);
+                } finally {
+                  budget.release();
+                }
+              });
+        }
+        List<DeletionResult> results = new ArrayList<>(releases.size());
+        for (Future<DeletionResult> future : executor.invokeAll(tasks)) {
+          DeletionResult result = future.get();
+          if (result != null) {
+            results.add(result);
+          }
+        }
+        int batchSize = access.tagDeletionBatchSize();
+        if (batchSize > 1) {
+          results = deleteTags(executor, results, batchSize);
+        }
+        return results;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    /**
+     * Deletes tags that have no release.
+     *
+     * @return the failures, by tag
+     */
+    Map<String, Exception> deleteOrphanedTags(List<String> tags) {
+      if (tags.isEmpty()) {
+        return Collections.emptyMap();
+      }
+      ExecutorService executor = executor();
+      try {
+        List<Callable<Exception>> tasks = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+          tasks.add(() -> deleteOrphanedTag(tag));
+        }
+        Map<String, Exception> failures = new HashMap<>();
+        List<Future<Exception>> futures = executor.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+          Exception failure = futures.get(i).get();
+          if (failure != null) {
+            failures.put(tags.get(i), failure);
+          }
+        }
+        return failures;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw new RuntimeException(e.getCause());
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    /** Starts deleting releases as they are submitted, see {@link Pipeline}. */
+    Pipeline pipeline() {
+      return new Pipeline();
+    }
+
+    /**
+     * Deletes releases as they are submitted, e.g. while releases are still being listed.
+     *
+     * <p>Submissions block while the workers are busy, so only a few releases are pending. Tags
+     * deleted in batches are deleted as soon as a batch is full. Only the number of deletions,
+     * failures and releases left once the budget is exhausted are kept.
+     */
+    class Pipeline implements AutoCloseable {
+
+      private final ExecutorService executor = executor();
+      private final Semaphore pending = new Semaphore(parallelism * 2);
+      private final List<Release> tagBatch = new ArrayList<>();
+      private final AtomicInteger deleted = new AtomicInteger();
+      private final AtomicInteger failures = new AtomicInteger();
+      private final AtomicInteger remaining = new AtomicInteger();
+
+      void submit(Release release) {
+        try {
+          pending.acquire();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+        executor.execute(
+            () -> {
+              try {
+                process(release);
+              } finally {
+                pending.release();
+              }
+            });
+      }
+
+      private void process(Release release) {
+        if (!budget.acquire()) {
+          remaining.incrementAndGet();
+          return;
+        }
+        DeletionResult result;
+        try {
+          result = delete(release);
+        } finally {
+          budget.release();
+        }
+        if (!result.succeeded()) {
+          failures.incrementAndGet();
+        } else if (access.tagDeletionBatchSize() <= 1) {
+          deleted.incrementAndGet();
+        } else {
+          List<Release> batch = null;
+          synchronized (tagBatch) {
+            tagBatch.add(release);
+            if (tagBatch.size() >= access.tagDeletionBatchSize()) {
+              batch = new ArrayList<>(tagBatch);
+              tagBatch.clear();
+            }
+          }
+          if (batch != null) {
+            deleteBatch(batch);
+          }
+        }
+      }
+
+      private void deleteBatch(List<Release> batch) {
+        int batchFailures = deleteTagBatch(batch).size();
+        failures.addAndGet(batchFailures);
+        deleted.addAndGet(batch.size() - batchFailures);
+      }
+
+      /** Waits for the submitted deletions to complete. */
+      @Override
+      public void close() {
+        executor.shutdown();
+        try {
+          executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          executor.shutdownNow();
+          throw new RuntimeException(e);
+        }
+        if (!tagBatch.isEmpty()) {
+          deleteBatch(new ArrayList<>(tagBatch));
+          tagBatch.clear();
+        }
+      }
+
+      int deleted() {
+        return deleted.get();
+      }
+
+      int failures() {
+        return failures.get();
+      }
+
+      /** The number of releases not deleted because the budget is exhausted. */
+      int remaining() {
+        return remaining.get();
+      }
+    }
+
+    private ExecutorService executor() {
+      ThreadFactory threadFactory = Thread.ofVirtual().name("delete-", 0).factory();
+      return Executors.newFixedThreadPool(parallelism, threadFactory);
+    }
+
+    /** Logs the releases and orphaned tags removed so far, unless they are logged one by one. */
+    void logRemoved(String repository) {
+      if (!LOG.verbose() && removedReleases.count() > 0) {
+        logYellow("Removed " + removedReleases.describe("release(s)") + " from " + repository);
+      }
+      if (!LOG.verbose() && removedTags.count() > 0) {
+        logYellow("Removed " + removedTags.describe("orphaned tag(s)") + " from " + repository);
+      }
+    }
+
+    private Exception deleteOrphanedTag(String tag) {
+      if (LOG.verbose()) {
+        logYellow("Removing orphaned tag " + tag);
+      }
+      try {
+        access.deleteTag(tag);
+        removedTags.add(tag);
+        return null;
+      } catch (Exception e) {
+        logRed("Error while deleting tag " + tag + ": " + e.getMessage());
+        return e;
+      }
+    }
+
+    private DeletionResult delete(Release release) {
+      if (LOG.verbose()) {
+        logYellow("Removing release with tag " + release.tag());
+      }
+      try {
+        if (journal == null || !journal.isReleaseDeleted(release.id())) {
+          access.delete(release);
+          if (journal != null) {
+            journal.releaseDeleted(release);
+          }
+        }
+        if (access.tagDeletionBatchSize() <= 1) {
+          deleteTag(release);
+        }
+        removedReleases.add(release.tag());
+        return new DeletionResult(release, null);
+      } catch (Exception e) {
+        logRed("Error while deleting release " + release + ": " + e.getMessage());
+        return new DeletionResult(release, e);
+      }
+    }
+
+    private void deleteTag(Release release) {
+      if (journal == null) {
+        access.deleteTag(release);
+      } else if (!journal.isTagDeleted(release.id())) {
+        access.deleteTag(release);
+        journal.tagDeleted(release);
+      }
+    }
+
+    private List<DeletionResult> deleteTags(
+        ExecutorService executor, List<DeletionResult> results, int batchSize)
+        throws InterruptedException, ExecutionException {
+      List<Release> deleted =
+          results.stream()
+              .filter(DeletionResult::succeeded)
+              .map(DeletionResult::release)
+              .filter(r -> journal == null || !journal.isTagDeleted(r.id()))
+              .toList();
+      List<Callable<Map<Release, Exception>>> tasks = new ArrayList<>();
+      for (int i = 0; i < deleted.size(); i += batchSize) {
+        List<Release> batch = deleted.subList(i, Math.min(i + batchSize, deleted.size()));
+        tasks.add(() -> deleteTagBatch(batch));
+      }
+      Map<Release, Exception> failures = new HashMap<>();
+      for (Future<Map<Release, Exception>> future : executor.invokeAll(tasks)) {
+        failures.putAll(future.get());
+      }
+      if (failures.isEmpty()) {
+        return results;
+      } else {
+        return results.stream()
+            .map(
+                r ->
+                    failures.containsKey(r.release())
+                        ? new DeletionResult(r.release(), failures.get(r.release()))
+                        : r)
+            .toList();
+      }
+    }
+
+    private Map<Release, Exception> deleteTagBatch(List<Release> batch) {
+      Map<Release, Exception> failures;
+      try {
+        failures = access.deleteTags(batch);
+      } catch (Exception e) {
+        failures = new HashMap<>();
+        for (Release release : batch) {
+          failures.put(release, e);
+        }
+      }
+      failures.forEach(
+          (release, e) ->
+              logRed("Error while deleting tag " + release.tag() + ": " + e.getMessage()));
+      if (journal != null) {
+        for (Release release : batch) {
+          if (!failures.containsKey(release)) {
+            journal.tagDeleted(release);
+          }
+        }
+      }
+      return failures;
+    }
+  }
+
+  /**
+   * Append-only journal of a deletion plan and of its completed deletions, to resume an interrupted
+   * run.
+   *
+   * <p>There is one file per repository in the {@code journals} sub-directory of the cache
+   * directory. Each line is a JSON entry: a header with the creation time and a fingerprint of the
+   * retention rules, the releases to delete, the number of kept releases that ends the plan, then
+   * the confirmed release and tag deletions. A truncated line (the process was killed while writing
+   * it) is skipped. A plan older than the maximum age or computed with other rules is discarded.
+   * The journal is removed when the run completes.
+   */
+  static class DeletionJournal {
+
+    static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final String fingerprint;
+    private final Duration maxAge;
+    private final Set<Long> deletedReleases = ConcurrentHashMap.newKeySet();
+    private final Set<Long> deletedTags = ConcurrentHashMap.newKeySet();
+    private int kept;
+    private Writer writer;
+
+    DeletionJournal(Path file, String fingerprint, Duration maxAge) {
+      this.file = file;
+      this.fingerprint = fingerprint;
+      this.maxAge = maxAge;
+    }
+
+    /** The journal of the repository, null if there is no cache directory. */
+    static DeletionJournal of(Input input, String repository) {
+      Source source = input.source();
+      if (source.cacheDirectory() == null) {
+        return null;
+      }
+      String key = source.apiUrl() + "/" + source.owner() + "/" + repository;
+      Path file = Path.of(source.cacheDirectory(), "journals", sha256(key) + ".journal");
+      return new DeletionJournal(file, fingerprint(input.params()), source.journalMaxAge());
+    }
+
+    /** Whether an interrupted run left a journal, which can then be resumed. */
+    boolean exists() {
+      return Files.isRegularFile(file);
+    }
+
+    /** Hash of the parameters the plan depends on. */
+    static String fingerprint(Params params) {
+      JsonObject retention = new JsonObject();
+      JsonArray rules = new JsonArray();
+      for (Rule rule : params.rules()) {
+        JsonObject r = new JsonObject();
+        r.addProperty("tag_filter", rule.tagFilter());
+        r.addProperty("keep_last_n", rule.keepLastN());
+        rules.add(r);
+      }
+      retention.add("rules", rules);
+      retention.addProperty("keep_last_n_per_minor", params.keepLastNPerMinor());
+      retention.addProperty("max_age", params.maxAge() == null ? null : params.maxAge().toString());
+      retention.addProperty("skip_drafts", params.skipDrafts());
+      retention.addProperty("skip_prereleases", params.skipPrereleases());
+      return sha256(retention.toString());
+    }
+
+    /**
+     * The releases to delete of an interrupted run, null if there is no fresh plan for the same
+     * rules.
+     *
+     * <p>The confirmed deletions are loaded as well, and the next ones are appended to the journal.
+     */
+    List<Release> resume(Instant now) {
+      if (!Files.isRegularFile(file)) {
+        return null;
+      }
+      List<Release> toDelete = new ArrayList<>();
+      boolean planned = false;
+      try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+        String line = reader.readLine();
+        JsonObject header = line == null ? null : entry(line);
+        if (header == null
+            || !header.has("version")
+            || header.get("version").getAsInt() != VERSION
+            || !fingerprint.equals(header.get("fingerprint").getAsString())) {
+          logYellow("Discarding deletion journal computed with other rules");
+          discard();
+          return null;
+        }
+        Instant created = Instant.parse(header.get("created").getAsString());
+        if (created.plus(maxAge).isBefore(now)) {
+          logYellow("Discarding deletion journal created at " + created);
+          discard();
+          return null;
+        }
+        while ((line = reader.readLine()) != null) {
+          JsonObject entry = entry(line);
+          if (entry == null) {
+            continue;
+          } else if (entry.has("release")) {
+            toDelete.add(GSON.fromJson(entry.get("release"), Release.class));
+          } else if (entry.has("kept")) {
+            kept = entry.get("kept").getAsInt();
+            planned = true;
+          } else if (entry.has("deleted")) {
+            deletedReleases.add(entry.get("deleted").getAsLong());
+          } else if (entry.has("tag_deleted")) {
+            deletedTags.add(entry.get("tag_deleted").getAsLong());
+          }
+        }
+      } catch (IOException | RuntimeException e) {
+        logYellow("Could not read deletion journal: " + e.getMessage());
+        planned = false;
+      }
+      if (!planned) {
+        // the run was interrupted before the plan was complete
+        discard();
+        deletedReleases.clear();
+        deletedTags.clear();
+        return null;
+      }
+      try {
+        synchronized (this) {
+          writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+          // terminates a truncated line
+          writer.write('\n');
+          writer.flush();
+        }
+      } catch (IOException e) {
+        logYellow("Could not append to deletion journal: " + e.getMessage());
+      }
+      return toDelete;
+    }
+
+    /** The JSON object of a line, null if the line is truncated or empty. */
+    private static JsonObject entry(String line) {
+      try {
+        JsonElement entry = JsonParser.parseString(line);
+        return entry.isJsonObject() ? entry.getAsJsonObject() : null;
+      } catch (JsonParseException e) {
+        return null;
+      }
+    }
+
+    /**
+     * Starts a journal with the plan, replacing the previous one.
+     *
+     * <p>Deletions are not recorded if the journal cannot be written.
+     */
+    synchronized void start(List<Release> toDelete, int kept, Instant now) {
+      this.kept = kept;
+      deletedReleases.clear();
+      deletedTags.clear();
+      try {
+        Files.createDirectories(file.getParent());
+        writer =
+            Files.newBufferedWriter(
+                file,
+                StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        JsonObject header = new JsonObject();
+        header.addProperty("version", VERSION);
+        header.addProperty("created", now.toString());
+        header.addProperty("fingerprint", fingerprint);
+        append(header);
+        for (Release release : toDelete) {
+          JsonObject entry = new JsonObject();
+          entry.add("release", GSON.toJsonTree(release));
+          append(entry);
+        }
+        JsonObject end = new JsonObject();
+        end.addProperty("kept", kept);
+        append(end);
+        writer.flush();
+      } catch (IOException e) {
+        logYellow("Could not write deletion journal: " + e.getMessage());
+        writer = null;
+      }
+    }
+
+    /** The number of kept releases of the plan. */
+    int kept() {
+      return kept;
+    }
+
+    boolean isReleaseDeleted(long id) {
+      return deletedReleases.contains(id);
+    }
+
+    boolean isTagDeleted(long id) {
+      return deletedTags.contains(id);
+    }
+
+    void releaseDeleted(Release release) {
+      deletedReleases.add(release.id());
+      record("deleted", release.id());
+    }
+
+    void tagDeleted(Release release) {
+      deletedTags.add(release.id());
+      record("tag_deleted", release.id());
+    }
+
+    private synchronized void record(String type, long id) {
+      if (writer == null) {
+        return;
+      }
+      JsonObject entry = new JsonObject();
+      entry.addProperty(type, id);
+      try {
+        append(entry);
+        writer.flush();
+      } catch (IOException e) {
+        logYellow("Could not write to deletion journal: " + e.getMessage());
+      }
+    }
+
+    private void append(JsonObject entry) throws IOException {
+      writer.write(entry.toString());
+      writer.write('\n');
+    }
+
+    /** Removes the journal, the run is complete. */
+    synchronized void complete() {
+      try {
+        if (writer != null) {
+          writer.close();
+          writer = null;
+        }
+      } catch (IOException e) {
+        // removing the file anyway
+      }
+      discard();
+    }
+
+    private void discard() {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        logYellow("Could not delete deletion journal: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Limits of a run on its duration, number of deletions and number of requests.
+   *
+   * <p>The limits are checked before each release deletion, the releases are deleted oldest first,
+   * so a large backlog can be drained over several runs. The deletions in flight when a limit is
+   * reached complete, so the duration and the number of requests can slightly exceed their limits.
+   */
+  static class DeletionBudget {
+
+    /** A release deletion and its tag deletion. */
+    private static final int REQUESTS_PER_DELETION = 2;
+
+    private final long start;
+    private final Duration maxDuration;
+    private final int maxDeletions;
+    private final long maxRequests;
+    private final Metrics metrics;
+    private int started;
+    private int inFlight;
+    private String exhausted;
+
+    DeletionBudget(Duration maxDuration, int maxDeletions, long maxRequests, Metrics metrics) {
+      this.start = System.nanoTime();
+      this.maxDuration = maxDuration;
+      this.maxDeletions = maxDeletions;
+      this.maxRequests = maxRequests;
+      this.metrics = metrics;
+    }
+
+    static DeletionBudget of(Params params, Metrics metrics) {
+      return new DeletionBudget(
+          params.maxDuration(), params.maxDeletions(), params.maxRequests(), metrics);
+    }
+
+    static DeletionBudget unlimited() {
+      return new DeletionBudget(null, 0, 0, null);
+    }
+
+    /** Reserves a deletion, false if a limit is reached. */
+    synchronized boolean acquire() {
+      if (exhausted == null) {
+        if (maxDuration != null && System.nanoTime() - start >= maxDuration.toNanos()) {
+          exhausted = "max_duration";
+        } else if (maxDeletions > 0 && started >= maxDeletions) {
+          exhausted = "max_deletions";
+        } else if (maxRequests > 0
+            && metrics.requests() + (inFlight + 1L) * REQUESTS_PER_DELETION > maxRequests) {
+          exhausted = "max_requests";
+        }
+        if (exhausted != null) {
+          logYellow("Reached " + exhausted + ", stopping deletions");
+        }
+      }
+      if (exhausted != null) {
+        return false;
+      }
+      started++;
+      inFlight++;
+      return true;
+    }
+
+    synchronized void release() {
+      inFlight--;
+    }
+
+    /** The limit reached, null if none. */
+    synchronized String exhausted() {
+      return exhausted;
+    }
+  }
+
+  static class RepositorySummary {
+
+    private final String repository;
+    private final int kept;
+    private final int deleted;
+    private final int failures;
+    private final int orphanedTags;
+    private final int remaining;
+    private final Exception error;
+
+    RepositorySummary(String repository, int kept, int deleted, int failures, Exception error) {
+      this(repository, kept, deleted, failures, 0, error);
+    }
+
+    RepositorySummary(
+        String repository, int kept, int deleted, int failures, int orphanedTags, Exception error) {
+      this(repository, kept, deleted, failures, orphanedTags, 0, error);
+    }
+
+    RepositorySummary(
+        String repository,
+        int kept,
+        int deleted,
+        int failures,
+        int orphanedTags,
+        int remaining,
+        Exception error) {
+      this.repository = repository;
+      this.kept = kept;
+      this.deleted = deleted;
+      this.failures = failures;
+      this.orphanedTags = orphanedTags;
+      this.remaining = remaining;
+      this.error = error;
+    }
+
+    String repository() {
+      return repository;
+    }
+
+    int kept() {
+      return kept;
+    }
+
+    int deleted() {
+      return deleted;
+    }
+
+    int failures() {
+      return failures;
+    }
+
+    /** The number of deleted tags that had no release. */
+    int orphanedTags() {
+      return orphanedTags;
+    }
+
+    /** The number of releases to delete left for a next run, once the budget is exhausted. */
+    int remaining() {
+      return remaining;
+    }
+
+    Exception error() {
+      return error;
+    }
+  }
+
+  static class DeletionResult {
+
+    private final Release release;
+    private final Exception error;
+
+    DeletionResult(Release release, Exception error) {
+      this.release = release;
+      this.error = error;
+    }
+
+    Release release() {
+      return release;
+    }
+
+    Exception error() {
+      return error;
+    }
+
+    boolean succeeded() {
+      return error == null;
+    }
+  }
+
+  interface ReleaseAccess {
+
+    List<Release> list();
+
+    /**
+     * Lists at least the releases whose tag starts with the prefix.
+     *
+     * <p>Implementations can use the prefix to list fewer releases, the default lists them all.
+     */
+    default List<Release> list(String tagPrefix) {
+      return list();
+    }
+
+    /** Lists at least the releases whose tag starts with the prefix, in an index. */
+    default ReleaseIndex index(String tagPrefix) {
+      return ReleaseIndex.of(list(tagPrefix));
+    }
+
+    /**
+     * Lists at least the releases whose tag starts with the prefix, page by page.
+     *
+     * <p>The default passes all the releases at once.
+     */
+    default void listPages(String tagPrefix, Consumer<ReleaseIndex> pages) {
+      pages.accept(index(tagPrefix));
+    }
+
+    /**
+     * Lists the releases like {@link #listPages(String, Consumer)}, the oldest pages first.
+     *
+     * <p>Deleting a release already passed then only shifts the pages already passed, so releases
+     * can be deleted while the others are listed. The default passes all the releases at once.
+     */
+    default void listPagesOldestFirst(String tagPrefix, Consumer<ReleaseIndex> pages) {
+      listPages(tagPrefix, pages);
+    }
+
+    void delete(Release release);
+
+    void deleteTag(String tag);
+
+    default void deleteTag(Release release) {
+      deleteTag(release.tag());
+    }
+
+    /** Lists the names of the tags that start with the prefix, all the tags for an empty prefix. */
+    List<String> listTags(String prefix);
+
+    /**
+     * Deletes the tags of the releases.
+     *
+     * @return the failures, by release
+     */
+    default Map<Release, Exception> deleteTags(List<Release> releases) {
+      Map<Release, Exception> failures = new HashMap<>();
+      for (Release release : releases) {
+        try {
+          deleteTag(release);
+        } catch (Exception e) {
+          failures.put(release, e);
+        }
+      }
+      return failures;
+    }
+
+    /**
+     * The number of tags {@link #deleteTags(List)} can delete at once.
+     *
+     * <p>1 means tags are deleted one by one, right after their release.
+     */
+    default int tagDeletionBatchSize() {
+      return 1;
+    }
+  }
+
+  /**
+   * Writes log lines from a bounded queue with a single thread.
+   *
+   * <p>Callers do not wait for the console, unless the queue is full, and lines from concurrent
+   * deletions never interleave. Lines are written in batches to a buffered writer, which is flushed
+   * once the queue is empty. Per-release lines are only written in verbose mode, see {@link
+   * TagSample} otherwise.
+   */
+  static class LogSink {
+
+    static final int QUEUE_CAPACITY = 8192;
+
+    private final BlockingQueue<String> lines;
+    private final Writer writer;
+    private final AtomicLong enqueued = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean verbose;
+    private long written;
+
+    LogSink(Writer writer, int capacity) {
+      this.lines = new ArrayBlockingQueue<>(capacity);
+      this.writer = writer;
+      this.thread = Thread.ofVirtual().name("log").start(this::write);
+    }
+
+    static LogSink console() {
+      return new LogSink(
+          new BufferedWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), 65536),
+          QUEUE_CAPACITY);
+    }
+
+    void log(String line) {
+      enqueued.incrementAndGet();
+      try {
+        lines.put(line);
+      } catch (InterruptedException e) {
+        enqueued.decrementAndGet();
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /** Waits for the lines logged so far to be written. */
+    void flush() {
+      long target = enqueued.get();
+      synchronized (this) {
+        while (written < target && thread.isAlive()) {
+          try {
+            wait(100);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+        }
+      }
+    }
+
+    /** Whether a line is logged for each kept and deleted release. */
+    boolean verbose() {
+      return verbose;
+    }
+
+    void verbose(boolean verbose) {
+      this.verbose = verbose;
+    }
+
+    private void write() {
+      List<String> batch = new ArrayList<>();
+      while (true) {
+        try {
+          batch.add(lines.take());
+        } catch (InterruptedException e) {
+          return;
+        }
+        lines.drainTo(batch);
+        try {
+          for (String line : batch) {
+            writer.write(line);
+            writer.write(System.lineSeparator());
+          }
+          writer.flush();
+        } catch (IOException e) {
+          // nowhere to report it, the lines are dropped
+        }
+        synchronized (this) {
+          written += batch.size();
+          notifyAll();
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * The number of releases or tags, with a few of them picked at random.
+   *
+   * <p>Used to log a summary instead of a line per release.
+   */
+  static class TagSample {
+
+    static final int SIZE = 5;
+
+    private final List<String> tags = new ArrayList<>(SIZE);
+    private long count;
+
+    synchronized void add(String tag) {
+      count++;
+      if (tags.size() < SIZE) {
+        tags.add(tag);
+      } else {
+        // reservoir sampling, each tag has the same probability to be in the sample
+        long index = ThreadLocalRandom.current().nextLong(count);
+        if (index < SIZE) {
+          tags.set((int) index, tag);
+        }
+      }
+    }
+
+    synchronized long count() {
+      return count;
+    }
+
+    synchronized List<String> tags() {
+      return new ArrayList<>(tags);
+    }
+
+    /** E.g. {@code 1200 release(s), e.g. v3.9.0-alpha.1, v3.9.0-alpha.7}. */
+    synchronized String describe(String what) {
+      return count + " " + what + (tags.isEmpty() ? "" : ", e.g. " + String.join(", ", tags));
+    }
+  }
+
+  /** Performance metrics of a run, reported as Concourse metadata and in a JSON report. */
+  static class Metrics {
+
+    private static final Pattern REPOSITORY_PATH = Pattern.compile("^/repos/[^/]+/[^/]+");
+    private static final Pattern TAG_PATH = Pattern.compile("/git/refs/tags/.+$");
+    private static final Pattern RELEASE_TAG_PATH = Pattern.compile("/releases/tags/.+$");
+    private static final Pattern MATCHING_TAGS_PATH =
+        Pattern.compile("/git/matching-refs/tags/.*$");
+    private static final Pattern ID_SEGMENT = Pattern.compile("/[0-9]+(?=/|$)");
+
+    private final Map<String, Queue<Long>> latencies = new ConcurrentHashMap<>();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong pagesParsed = new AtomicLong();
+    private final AtomicLong listingNanos = new AtomicLong();
+    private final AtomicLong hedgedRequests = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+
+    /** The endpoint of a request, e.g. {@code DELETE /releases/{id}}. */
+    static String endpoint(HttpRequest request) {
+      String path = request.uri().getPath();
+      path = REPOSITORY_PATH.matcher(path).replaceFirst("");
+      path = TAG_PATH.matcher(path).replaceFirst("/git/refs/tags/{tag}");
+      path = RELEASE_TAG_PATH.matcher(path).replaceFirst("/releases/tags/{tag}");
+      path = MATCHING_TAGS_PATH.matcher(path).replaceFirst("/git/matching-refs/tags/{prefix}");
+      path = ID_SEGMENT.matcher(path).replaceAll("/{id}");
+      return request.method() + " " + (path.isEmpty() ? "/" : path);
+    }
+
+    /** The latency percentile, in nanoseconds. */
+    static long percentile(List<Long> sortedLatencies, double percentile) {
+      if (sortedLatencies.isEmpty()) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100.0 * sortedLatencies.size()) - 1;
+      return sortedLatencies.get(Math.max(0, Math.min(index, sortedLatencies.size() - 1)));
+    }
+
+    void request(HttpRequest request, long latencyNanos) {
+      latencies
+          .computeIfAbsent(endpoint(request), e -> new ConcurrentLinkedQueue<>())
+          .add(latencyNanos);
+      requests.incrementAndGet();
+    }
+
+    void pageParsed() {
+      pagesParsed.incrementAndGet();
+    }
+
+    void listed(long nanos) {
+      listingNanos.addAndGet(nanos);
+    }
+
+    void hedged() {
+      hedgedRequests.incrementAndGet();
+    }
+
+    <T> HttpResponse.BodyHandler<T> counting(HttpResponse.BodyHandler<T> handler) {
+      return responseInfo ->
+          new CountingBodySubscriber<>(handler.apply(responseInfo), bytesReceived);
+    }
+
+    long requests() {
+      return requests.get();
+    }
+
+    long bytesReceived() {
+      return bytesReceived.get();
+    }
+
+    long pagesParsed() {
+      return pagesParsed.get();
+    }
+
+    long hedgedRequests() {
+      return hedgedRequests.get();
+    }
+
+    Map<String, String> metadata(
+        Duration duration, List<RepositorySummary> summaries, long rateLimitRemaining) {
+      List<Long> allLatencies = sortedLatencies(null);
+      Map<String, String> metadata = new LinkedHashMap<>();
+      metadata.put("duration", duration.toMillis() + " ms");
+      metadata.put("listing", Duration.ofNanos(listingNanos.get()).toMillis() + " ms");
+      metadata.put("pages", String.valueOf(pagesParsed()));
+      metadata.put("requests", String.valueOf(requests()));
+      if (hedgedRequests() > 0) {
+        metadata.put("hedged requests", String.valueOf(hedgedRequests()));
+      }
+      metadata.put(
+          "latency p50/p99",
+          toMillis(percentile(allLatencies, 50))
+              + "/"
+              + toMillis(percentile(allLatencies, 99))
+              + " ms");
+      metadata.put("received", bytesReceived() + " bytes");
+      metadata.put(
+          "kept", String.valueOf(summaries.stream().mapToInt(RepositorySummary::kept).sum()));
+      metadata.put(
+          "deleted", String.valueOf(summaries.stream().mapToInt(RepositorySummary::deleted).sum()));
+      metadata.put(
+          "failures",
+          String.valueOf(summaries.stream().mapToInt(RepositorySummary::failures).sum()));
+      int orphanedTags = summaries.stream().mapToInt(RepositorySummary::orphanedTags).sum();
+      if (orphanedTags > 0) {
+        metadata.put("orphaned tags", String.valueOf(orphanedTags));
+      }
+      int remaining = summaries.stream().mapToInt(RepositorySummary::remaining).sum();
+      if (remaining > 0) {
+        metadata.put("remaining", String.valueOf(remaining));
+      }
+      if (rateLimitRemaining >= 0) {
+        metadata.put("rate limit remaining", String.valueOf(rateLimitRemaining));
+      }
+      return metadata;
+    }
+
+    JsonObject report(
+        Duration duration, List<RepositorySummary> summaries, long rateLimitRemaining) {
+      JsonObject report = new JsonObject();
+      report.addProperty("timestamp", Instant.now().toString());
+      report.addProperty("duration_ms", duration.toMillis());
+      report.addProperty("listing_ms", Duration.ofNanos(listingNanos.get()).toMillis());
+      report.addProperty("pages_parsed", pagesParsed());
+      report.addProperty("requests", requests());
+      report.addProperty("hedged_requests", hedgedRequests());
+      report.addProperty("bytes_received", bytesReceived());
+      report.addProperty("rate_limit_remaining", rateLimitRemaining);
+      JsonObject endpoints = new JsonObject();
+      for (String endpoint : new TreeSet<>(latencies.keySet())) {
+        endpoints.add(endpoint, latencyReport(sortedLatencies(endpoint)));
+      }
+      report.add("endpoints", endpoints);
+      JsonArray repositories = new JsonArray();
+      for (RepositorySummary summary : summaries) {
+        JsonObject repository = new JsonObject();
+        repository.addProperty("repository", summary.repository());
+        repository.addProperty("kept", summary.kept());
+        repository.addProperty("deleted", summary.deleted());
+        repository.addProperty("failures", summary.failures());
+        repository.addProperty("orphaned_tags", summary.orphanedTags());
+        repository.addProperty("remaining", summary.remaining());
+        if (summary.error() != null) {
+          repository.addProperty("error", summary.error().getMessage());
+        }
+        repositories.add(repository);
+      }
+      report.add("repositories", repositories);
+      return report;
+    }
+
+    private List<Long> sortedLatencies(String endpoint) {
+      List<Long> result = new ArrayList<>();
+      if (endpoint == null) {
+        latencies.values().forEach(result::addAll);
+      } else {
+        result.addAll(latencies.getOrDefault(endpoint, new ConcurrentLinkedQueue<>()));
+      }
+      Collections.sort(result);
+      return result;
+    }
+
+    private static JsonObject latencyReport(List<Long> sortedLatencies) {
+      JsonObject latency = new JsonObject();
+      latency.addProperty("requests", sortedLatencies.size());
+      latency.addProperty("p50_ms", toMillis(percentile(sortedLatencies, 50)));
+      latency.addProperty("p90_ms", toMillis(percentile(sortedLatencies, 90)));
+      latency.addProperty("p99_ms", toMillis(percentile(sortedLatencies, 99)));
+      latency.addProperty("max_ms", toMillis(percentile(sortedLatencies, 100)));
+      return latency;
+    }
+
+    private static long toMillis(long nanos) {
+      return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+  }
+
+  static class CountingBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private final HttpResponse.BodySubscriber<T> delegate;
+    private final AtomicLong count;
+
+    CountingBodySubscriber(HttpResponse.BodySubscriber<T> delegate, AtomicLong count) {
+      this.delegate = delegate;
+      this.count = count;
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      delegate.onSubscribe(subscription);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      for (ByteBuffer buffer : item) {
+        count.addAndGet(buffer.remaining());
+      }
+      delegate.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      delegate.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      delegate.onComplete();
+    }
+  }
+
+  /**
+   * Fails a response body that stalls.
+   *
+   * <p>The request timeout of the HTTP client ends with the response headers, a body that stalls
+   * afterwards would block its reader forever. The timeout runs again whenever the reader waits for
+   * data, from the request for more data to the next data. A body waiting for a slow reader does
+   * not time out. A stalled body fails with a {@link HttpTimeoutException}, and the subscription is
+   * cancelled.
+   */
+  static class DeadlineBodySubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+    private static final ScheduledThreadPoolExecutor TIMER = timer();
+
+    private final HttpResponse.BodySubscriber<T> delegate;
+    private final Duration timeout;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Flow.Subscription subscription;
+    private long demand;
+    private ScheduledFuture<?> deadline;
+    private boolean done;
+
+    DeadlineBodySubscriber(HttpResponse.BodySubscriber<T> delegate, Duration timeout) {
+      this.delegate = delegate;
+      this.timeout = timeout;
+    }
+
+    private static ScheduledThreadPoolExecutor timer() {
+      ScheduledThreadPoolExecutor timer =
+          new ScheduledThreadPoolExecutor(
+              1, Thread.ofPlatform().daemon().name("body-deadline").factory());
+      timer.setRemoveOnCancelPolicy(true);
+      return timer;
+    }
+
+    private void expire() {
+      lock.lock();
+      try {
+        if (done) {
+          return;
+        }
+        done = true;
+        subscription.cancel();
+        delegate.onError(new HttpTimeoutException("Response body stalled for " + timeout));
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /** Arms the deadline while data is requested, disarms it otherwise. Called with the lock. */
+    private void updateDeadline() {
+      if (demand > 0 && !done) {
+        if (deadline == null) {
+          deadline = TIMER.schedule(this::expire, timeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+      } else if (deadline != null) {
+        deadline.cancel(false);
+        deadline = null;
+      }
+    }
+
+    @Override
+    public CompletionStage<T> getBody() {
+      return delegate.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      lock.lock();
+      try {
+        this.subscription = subscription;
+      } finally {
+        lock.unlock();
+      }
+      delegate.onSubscribe(
+          new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+              lock.lock();
+              try {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                updateDeadline();
+              } finally {
+                lock.unlock();
+              }
+              subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+              lock.lock();
+              try {
+                done = true;
+                updateDeadline();
+              } finally {
+                lock.unlock();
+              }
+              subscription.cancel();
+            }
+          });
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> item) {
+      lock.lock();
+      try {
+        if (done) {
+          return;
+        }
+        if (demand != Long.MAX_VALUE) {
+          demand--;
+        }
+        // the next data gets a full timeout
+        if (deadline != null) {
+          deadline.cancel(false);
+          deadline = null;
+        }
+        updateDeadline();
+        delegate.onNext(item);
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      lock.lock();
+      try {
+        if (!done) {
+          done = true;
+          updateDeadline();
+          delegate.onError(throwable);
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void onComplete() {
+      lock.lock();
+      try {
+        if (!done) {
+          done = true;
+          updateDeadline();
+          delegate.onComplete();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Sends all the requests to the GitHub API, honoring its rate limits.
+   *
+   * <p>The scheduler tracks the remaining budget from the rate limit response headers and pauses
+   * all requests until the reset time once it is exhausted. It also retries requests rejected by
+   * the primary or secondary rate limits. The number of in-flight requests is adjusted additively
+   * on success and cut by half on secondary rate limit responses.
+   *
+   * <p>Requests without timeout get the scheduler timeout. The timeout applies to the response
+   * headers, then to each wait for the response body. Idempotent requests that time out, fail at
+   * the connection level or get a server error are retried with a jittered exponential backoff, and
+   * so are the body reads that fail with {@link #read(HttpRequest, ResponseReader)}.
+   */
+  static class RequestScheduler {
+
+    static final int MAX_RATE_LIMIT_RETRIES = 5;
+    static final int MAX_ERROR_RETRIES = 4;
+    static final Duration DEFAULT_SECONDARY_RATE_LIMIT_WAIT = Duration.ofSeconds(60);
+    static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    static final Duration DEFAULT_RETRY_BASE_DELAY = Duration.ofMillis(500);
+    private static final Duration MAX_RETRY_DELAY = Duration.ofSeconds(10);
+    private static final Set<String> IDEMPOTENT_METHODS = Set.of("GET", "HEAD", "PUT", "DELETE");
+
+    private final HttpClient client;
+    private final int maxConcurrency;
+    private final Metrics metrics;
+    private final Duration requestTimeout;
+    private final Duration retryBaseDelay;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double concurrency;
+    private int inFlight = 0;
+    private Instant pausedUntil = Instant.MIN;
+    private long remaining = -1;
+    private Instant reset = Instant.MIN;
+    private final Map<URI, Future<HttpResponse<InputStream>>> prefetched =
+        new ConcurrentHashMap<>();
+
+    RequestScheduler(HttpClient client, int maxConcurrency) {
+      this(client, maxConcurrency, new Metrics());
+    }
+
+    RequestScheduler(HttpClient client, int maxConcurrency, Metrics metrics) {
+      this(client, maxConcurrency, metrics, DEFAULT_REQUEST_TIMEOUT, DEFAULT_RETRY_BASE_DELAY);
+    }
+
+    RequestScheduler(
+        HttpClient client,
+        int maxConcurrency,
+        Metrics metrics,
+        Duration requestTimeout,
+        Duration retryBaseDelay) {
+      this.client = client;
+      this.maxConcurrency = Math.max(1, maxConcurrency);
+      this.concurrency = this.maxConcurrency;
+      this.metrics = metrics;
+      this.requestTimeout = requestTimeout;
+      this.retryBaseDelay = retryBaseDelay;
+    }
+
+    Metrics metrics() {
+      return metrics;
+    }
+
+    /**
+     * Sends a GET request in the background, its response is then returned once by {@link
+     * #prefetched(URI)}.
+     *
+     * <p>The request opens the connection (TLS handshake, HTTP/2 negotiation) while the run is
+     * still starting. The body is buffered, so it does not depend on when the response is taken,
+     * e.g. after other requests or a rate limit pause, and nothing stays open if it is never taken.
+     */
+    void prefetch(HttpRequest request) {
+      FutureTask<HttpResponse<InputStream>> response =
+          new FutureTask<>(
+              () ->
+                  send(
+                      request,
+                      info ->
+                          BodySubscribers.mapping(
+                              BodySubscribers.ofByteArray(), ByteArrayInputStream::new)));
+      if (prefetched.putIfAbsent(request.uri(), response) == null) {
+        Thread.ofVirtual().name("prefetch").start(response);
+      }
+    }
+
+    /** The response of a prefetched request, null if there is none or if it failed. */
+    HttpResponse<InputStream> prefetched(URI uri) throws InterruptedException {
+      Future<HttpResponse<InputStream>> response = prefetched.remove(uri);
+      if (response == null) {
+        return null;
+      }
+      try {
+        return response.get();
+      } catch (ExecutionException e) {
+        // the caller sends the request again
+        return null;
+      }
+    }
+
+    <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler)
+        throws IOException, InterruptedException {
+      return send(request, handler, IDEMPOTENT_METHODS.contains(request.method()));
+    }
+
+    /**
+     * Sends a request, retrying it after errors only if it is retriable, e.g. a read-only GraphQL
+     * query, which is a POST.
+     */
+    <T> HttpResponse<T> send(
+        HttpRequest request, HttpResponse.BodyHandler<T> handler, boolean retriable)
+        throws IOException, InterruptedException {
+      if (request.timeout().isEmpty()) {
+        request =
+            HttpRequest.newBuilder(request, (name, value) -> true).timeout(requestTimeout).build();
+      }
+      Duration timeout = request.timeout().get();
+      int rateLimitRetries = 0;
+      int errorRetries = 0;
+      while (true) {
+        acquire();
+        HttpResponse<T> response = null;
+        IOException failure = null;
+        long start = System.nanoTime();
+        try {
+          response =
+              client.send(
+                  request,
+                  metrics.counting(
+                      info -> new DeadlineBodySubscriber<>(handler.apply(info), timeout)));
+        } catch (IOException e) {
+          // connection reset, timeout, etc
+          failure = e;
+        } finally {
+          release();
+        }
+        metrics.request(request, System.nanoTime() - start);
+        if (failure != null) {
+          if (!retriable || errorRetries == MAX_ERROR_RETRIES) {
+            throw failure;
+          }
+          retryAfterError(request, failure.toString(), errorRetries++);
+          continue;
+        }
+        Duration wait = onResponse(response);
+        if (wait != null) {
+          if (rateLimitRetries++ == MAX_RATE_LIMIT_RETRIES) {
+            return response;
+          }
+          close(response);
+          logYellow(
+              "Rate limit hit for "
+                  + request.method()
+                  + " "
+                  + request.uri()
+                  + ", retrying in "
+                  + wait.toSeconds()
+                  + " second(s)");
+        } else if (response.statusCode() >= 500 && retriable && errorRetries < MAX_ERROR_RETRIES) {
+          close(response);
+          retryAfterError(request, "response code " + response.statusCode(), errorRetries++);
+        } else {
+          return response;
+        }
+      }
+    }
+
+    /**
+     * Sends a request and reads its body, sending the request again if reading the body fails for
+     * an idempotent request, e.g. because the body stalled.
+     */
+    <T> T read(HttpRequest request, ResponseReader<T> reader)
+        throws IOException, InterruptedException {
+      return read(request, reader, IDEMPOTENT_METHODS.contains(request.method()));
+    }
+
+    /** Like {@link #read(HttpRequest, ResponseReader)}, with an explicit retry policy. */
+    <T> T read(HttpRequest request, ResponseReader<T> reader, boolean retriable)
+        throws IOException, InterruptedException {
+      for (int retry = 0; ; retry++) {
+        HttpResponse<InputStream> response = send(request, BodyHandlers.ofInputStream(), retriable);
+        try {
+          return reader.read(response);
+        } catch (IOException e) {
+          close(response);
+          if (!retriable || retry == MAX_ERROR_RETRIES) {
+            throw e;
+          }
+          retryAfterError(request, e.toString(), retry);
+        }
+      }
+    }
+
+    /** Reads the body of a response, the reader closes the body. */
+    interface ResponseReader<T> {
+
+      T read(HttpResponse<InputStream> response) throws IOException;
+    }
+
+    /** Full jitter: a random delay up to an exponentially growing, capped, maximum. */
+    Duration retryDelay(int retry) {
+      long maxDelay =
+          Math.min(MAX_RETRY_DELAY.toMillis(), retryBaseDelay.toMillis() << Math.min(retry, 20));
+      return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxDelay + 1));
+    }
+
+    private void retryAfterError(HttpRequest request, String error, int retry)
+        throws InterruptedException {
+      Duration delay = retryDelay(retry);
+      logYellow(
+          "Error for "
+              + request.method()
+              + " "
+              + request.uri()
+              + " ("
+              + error
+              + "), retrying in "
+              + delay.toMillis()
+              + " ms");
+      Thread.sleep(delay);
+    }
+
+    private static void close(HttpResponse<?> response) throws IOException {
+      if (response.body() instanceof Closeable body) {
+        body.close();
+      }
+    }
+
+    int concurrency() {
+      lock.lock();
+      try {
+        return (int) concurrency;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    long remaining() {
+      lock.lock();
+      try {
+        return remaining;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void acquire() throws InterruptedException {
+      lock.lock();
+      try {
+        while (true) {
+          Instant now = Instant.now();
+          if (now.isBefore(pausedUntil)) {
+            available.await(Duration.between(now, pausedUntil).toMillis(), TimeUnit.MILLISECONDS);
+          } else if (inFlight >= (int) concurrency) {
+            available.await();
+          } else {
+            inFlight++;
+            return;
+          }
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void release() {
+      lock.lock();
+      try {
+        inFlight--;
+        available.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Updates the rate limit state from the response.
+     *
+     * @return how long to wait before retrying the request, null if it should not be retried
+     */
+    private Duration onResponse(HttpResponse<?> response) {
+      HttpHeaders headers = response.headers();
+      OptionalLong remainingHeader = headers.firstValueAsLong("x-ratelimit-remaining");
+      OptionalLong resetHeader = headers.firstValueAsLong("x-ratelimit-reset");
+      OptionalLong retryAfter = headers.firstValueAsLong("retry-after");
+      int status = response.statusCode();
+      lock.lock();
+      try {
+        Instant now = Instant.now();
+        if (remainingHeader.isPresent()) {
+          remaining = remainingHeader.getAsLong();
+        }
+        if (resetHeader.isPresent()) {
+          reset = Instant.ofEpochSecond(resetHeader.getAsLong());
+        }
+        Duration wait = null;
+        if (status == 403 || status == 429) {
+          if (retryAfter.isPresent()) {
+            // secondary rate limit
+            wait = Duration.ofSeconds(retryAfter.getAsLong());
+            concurrency = Math.max(1, concurrency / 2);
+          } else if (remainingHeader.isPresent() && remaining == 0) {
+            // primary rate limit
+            wait = Duration.between(now, reset);
+          } else if (status == 429) {
+            wait = DEFAULT_SECONDARY_RATE_LIMIT_WAIT;
+            concurrency = Math.max(1, concurrency / 2);
+          }
+        } else if (status < 400) {
+          concurrency = Math.min(maxConcurrency, concurrency + 1 / concurrency);
+        }
+        if (wait != null && wait.isNegative()) {
+          wait = Duration.ZERO;
+        }
+        if (wait != null) {
+          pausedUntil = max(pausedUntil, now.plus(wait));
+        } else if (remainingHeader.isPresent() && remaining == 0) {
+          // budget exhausted, no more requests until the reset
+          pausedUntil = max(pausedUntil, reset);
+        }
+        available.signalAll();
+        return wait;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private static Instant max(Instant i1, Instant i2) {
+      return i1.isAfter(i2) ? i1 : i2;
+    }
+  }
+
+  /**
+   * Measures the GitHub API from where the resource runs, to tune its parameters.
+   *
+   * <p>Requests are sent with plain clients, without the retries and the concurrency control of
+   * {@link RequestScheduler}, so the numbers reflect the API and the network only. Only releases
+   * are listed, nothing is deleted. The throughput is not measured when the rate limit budget is
+   * low, as it takes about 180 requests.
+   */
+  static class ApiBenchmark {
+
+    static final int[] PAGE_SIZES = {10, 30, 100};
+    static final int[] CONCURRENCIES = {1, 2, 4, 8};
+    static final int SAMPLES = 5;
+    static final int THROUGHPUT_REQUESTS = 16;
+    static final long MIN_BUDGET = 1000;
+
+    private final Source source;
+    private final String repository;
+
+    ApiBenchmark(Source source, String repository) {
+      this.source = source;
+      this.repository = repository;
+    }
+
+    JsonObject run() throws Exception {
+      JsonObject report = new JsonObject();
+      report.addProperty("api_url", source.apiUrl());
+      report.addProperty("repository", source.owner() + "/" + repository);
+      report.add("connection", connection());
+
+      JsonObject rateLimit;
+      JsonArray pages = new JsonArray();
+      try (HttpClient client = client(versions().get(versions().size() - 1))) {
+        rateLimit = rateLimit(client);
+        for (int pageSize : PAGE_SIZES) {
+          pages.add(pages(client, pageSize));
+        }
+      }
+      report.add("rate_limit", rateLimit);
+      report.add("pages", pages);
+
+      long remaining = rateLimit.has("remaining") ? rateLimit.get("remaining").getAsLong() : -1;
+      JsonArray throughput = new JsonArray();
+      if (remaining >= 0 && remaining < MIN_BUDGET) {
+        logYellow(
+            "Skipping throughput measurement, only "
+                + remaining
+                + " requests left in the rate limit budget");
+      } else {
+        for (HttpClient.Version version : versions()) {
+          for (int concurrency : CONCURRENCIES) {
+            throughput.add(throughput(version, concurrency));
+          }
+        }
+      }
+      report.add("throughput", throughput);
+      report.add("recommendation", recommendation(pages, throughput, remaining));
+      return report;
+    }
+
+    /** The DNS resolution, TCP connection and TLS handshake times to the API host. */
+    private JsonObject connection() throws IOException {
+      URI uri = URI.create(source.apiUrl());
+      boolean tls = "https".equalsIgnoreCase(uri.getScheme());
+      int port = uri.getPort() > 0 ? uri.getPort() : tls ? 443 : 80;
+      JsonObject connection = new JsonObject();
+      long start = System.nanoTime();
+      InetAddress address = InetAddress.getByName(uri.getHost());
+      long resolved = System.nanoTime();
+      connection.addProperty("dns_ms", millis(resolved - start));
+      try (Socket socket = new Socket()) {
+        socket.connect(
+            new InetSocketAddress(address, port), (int) source.requestTimeout().toMillis());
+        long connected = System.nanoTime();
+        connection.addProperty("connect_ms", millis(connected - resolved));
+        if (tls) {
+          SSLSocketFactory factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+          try (SSLSocket tlsSocket =
+              (SSLSocket) factory.createSocket(socket, uri.getHost(), port, true)) {
+            tlsSocket.startHandshake();
+            connection.addProperty("tls_handshake_ms", millis(System.nanoTime() - connected));
+            connection.addProperty("tls_protocol", tlsSocket.getSession().getProtocol());
+          }
+        }
+      }
+      log(
+          "Connection to "
+              + uri.getHost()
+              + ": DNS "
+              + connection.get("dns_ms")
+              + " ms, TCP "
+              + connection.get("connect_ms")
+              + " ms"
+              + (tls ? ", TLS handshake " + connection.get("tls_handshake_ms") + " ms" : ""));
+      return connection;
+    }
+
+    /** The rate limit headers of a first request, which also opens the connection. */
+    private JsonObject rateLimit(HttpClient client) throws Exception {
+      HttpResponse<Void> response =
+          client.send(request("/releases?per_page=1"), BodyHandlers.discarding());
+      check(response);
+      JsonObject rateLimit = new JsonObject();
+      HttpHeaders headers = response.headers();
+      headers
+          .firstValueAsLong("x-ratelimit-limit")
+          .ifPresent(l -> rateLimit.addProperty("limit", l));
+      headers
+          .firstValueAsLong("x-ratelimit-remaining")
+          .ifPresent(r -> rateLimit.addProperty("remaining", r));
+      headers
+          .firstValueAsLong("x-ratelimit-reset")
+          .ifPresent(r -> rateLimit.addProperty("reset", Instant.ofEpochSecond(r).toString()));
+      log(
+          "Rate limit: "
+              + (rateLimit.has("remaining")
+                  ? rateLimit.get("remaining") + " requests left until " + rateLimit.get("reset")
+                  : "unknown"));
+      return rateLimit;
+    }
+
+    /** The latency of the first page of releases, for a page size. */
+    private JsonObject pages(HttpClient client, int pageSize) throws Exception {
+      List<Long> latencies = new ArrayList<>(SAMPLES);
+      int releases = 0;
+      for (int i = 0; i < SAMPLES; i++) {
+        long start = System.nanoTime();
+        releases = listPage(client, pageSize);
+        latencies.add(System.nanoTime() - start);
+      }
+      Collections.sort(latencies);
+      long p50 = Metrics.percentile(latencies, 50);
+      JsonObject pages = new JsonObject();
+      pages.addProperty("per_page", pageSize);
+      pages.addProperty("releases", releases);
+      pages.addProperty("p50_ms", millis(p50));
+      pages.addProperty("p90_ms", millis(Metrics.percentile(latencies, 90)));
+      pages.addProperty("max_ms", millis(Metrics.percentile(latencies, 100)));
+      pages.addProperty("ms_per_release", millis(p50 / Math.max(1, releases)));
+      log(
+          "Page of "
+              + pageSize
+              + " releases: p50 "
+              + pages.get("p50_ms")
+              + " ms, p90 "
+              + pages.get("p90_ms")
+              + " ms, "
+              + pages.get("ms_per_release")
+              + " ms per release");
+      return pages;
+    }
+
+    /** The pages of releases per second, with requests in flight on a new client. */
+    private JsonObject throughput(HttpClient.Version version, int concurrency) throws Exception {
+      long elapsed;
+      try (HttpClient client = client(version)) {
+        // opens the connections first, HTTP/1.1 needs one per request in flight
+        listPages(client, concurrency, concurrency);
+        long start = System.nanoTime();
+        listPages(client, concurrency, THROUGHPUT_REQUESTS);
+        elapsed = System.nanoTime() - start;
+      }
+      double perSecond = THROUGHPUT_REQUESTS * 1_000_000_000.0 / Math.max(1, elapsed);
+      JsonObject throughput = new JsonObject();
+      throughput.addProperty("http_version", name(version));
+      throughput.addProperty("concurrency", concurrency);
+      throughput.addProperty("requests_per_second", Math.round(perSecond * 10) / 10.0);
+      log(
+          name(version)
+              + ", "
+              + concurrency
+              + " request(s) in flight: "
+              + throughput.get("requests_per_second")
+              + " requests/s");
+      return throughput;
+    }
+
+    private JsonObject recommendation(JsonArray pages, JsonArray throughput, long remaining) {
+      JsonObject recommendation = new JsonObject();
+      // the largest page within 10% of the lowest cost per release, it takes fewer requests
+      double lowestCost = Double.MAX_VALUE;
+      for (JsonElement page : pages) {
+        lowestCost =
+            Math.min(lowestCost, page.getAsJsonObject().get("ms_per_release").getAsDouble());
+      }
+      for (JsonElement page : pages) {
+        JsonObject p = page.getAsJsonObject();
+        if (p.get("ms_per_release").getAsDouble() <= lowestCost * 1.1) {
+          recommendation.addProperty("page_size", p.get("per_page").getAsInt());
+        }
+      }
+      // the lowest concurrency within 10% of the best throughput, with the version runs use
+      String version = name(versions().get(versions().size() - 1));
+      double best = 0;
+      for (JsonElement t : throughput) {
+        JsonObject measure = t.getAsJsonObject();
+        if (version.equals(measure.get("http_version").getAsString())) {
+          best = Math.max(best, measure.get("requests_per_second").getAsDouble());
+        }
+      }
+      for (JsonElement t : throughput) {
+        JsonObject measure = t.getAsJsonObject();
+        if (version.equals(measure.get("http_version").getAsString())
+            && measure.get("requests_per_second").getAsDouble() >= best * 0.9) {
+          recommendation.addProperty("parallelism", measure.get("concurrency").getAsInt());
+          break;
+        }
+      }
+      if (remaining >= 0) {
+        recommendation.addProperty(
+            "deletions_in_budget", remaining / DeletionBudget.REQUESTS_PER_DELETION);
+      }
+      logGreen(
+          "Recommended settings: parallelism "
+              + (recommendation.has("parallelism") ? recommendation.get("parallelism") : "unknown")
+              + ", page size "
+              + recommendation.get("page_size")
+              + " (the resource lists "
+              + GitubRestApiReleaseAccess.PAGE_SIZE
+              + " releases per page)"
+              + (remaining >= 0
+                  ? ", "
+                      + recommendation.get("deletions_in_budget")
+                      + " deletions left in the rate limit budget"
+                  : ""));
+      return recommendation;
+    }
+
+    private void listPages(HttpClient client, int concurrency, int requests) throws Exception {
+      AtomicInteger sent = new AtomicInteger();
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        List<Future<Void>> workers = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+          workers.add(
+              executor.submit(
+                  () -> {
+                    while (sent.getAndIncrement() < requests) {
+                      listPage(client, GitubRestApiReleaseAccess.PAGE_SIZE);
+                    }
+                    return null;
+                  }));
+        }
+        for (Future<Void> worker : workers) {
+          worker.get();
+        }
+      }
+    }
+
+    /** Lists and parses the first page of releases, returning the number of releases. */
+    private int listPage(HttpClient client, int pageSize) throws Exception {
+      HttpResponse<InputStream> response =
+          client.send(request("/releases?per_page=" + pageSize), BodyHandlers.ofInputStream());
+      try (InputStream body = response.body()) {
+        check(response);
+        ReleaseIndex.Builder releases = new ReleaseIndex.Builder();
+        parseReleases(decoded(response, body), releases);
+        return releases.build().size();
+      }
+    }
+
+    private HttpRequest request(String path) {
+      return HttpRequest.newBuilder(
+              URI.create(source.apiUrl() + "/repos/" + source.owner() + "/" + repository + path))
+          .setHeader("Authorization", "token " + source.accessToken())
+          .setHeader("Accept-Encoding", "gzip")
+          .timeout(source.requestTimeout())
+          .GET()
+          .build();
+    }
+
+    private HttpClient client(HttpClient.Version version) {
+      return HttpClient.newBuilder()
+          .connectTimeout(Duration.ofSeconds(60))
+          .version(version)
+          .build();
+    }
+
+    /** The versions to compare, without HTTP/2 on cleartext, which runs do not use. */
+    private List<HttpClient.Version> versions() {
+      return source.apiUrl().startsWith("http:")
+          ? List.of(HttpClient.Version.HTTP_1_1)
+          : List.of(HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_2);
+    }
+
+    private static void check(HttpResponse<?> response) {
+      if (response.statusCode() != 200) {
+        throw new IllegalStateException(
+            "Unexpected response code when listing releases: " + response.statusCode());
+      }
+    }
+
+    private static String name(HttpClient.Version version) {
+      return version == HttpClient.Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+    }
+
+    private static double millis(long nanos) {
+      return Math.round(nanos / 100_000.0) / 10.0;
+    }
+  }
+
+  static class GitubRestApiReleaseAccess implements ReleaseAccess {
+
+    static final int PAGE_SIZE = 100;
+    static final int MAX_IN_FLIGHT_PAGES = 8;
+    static final int MAX_PAGES_AHEAD = 2 * MAX_IN_FLIGHT_PAGES;
+    static final int MIN_HEDGE_SAMPLES = 5;
+    private static final Pattern PAGE_PARAMETER = Pattern.compile("([?&]page=)([0-9]+)");
+
+    private final RequestScheduler scheduler;
+
+    private final Source source;
+
+    private final String repository;
+
+    private final PageCache cache;
+
+    private final int hedgePercentile;
+
+    private final Queue<Long> pageLatencies = new ConcurrentLinkedQueue<>();
+
+    GitubRestApiReleaseAccess(Source source, String repository, RequestScheduler scheduler) {
+      this.source = source;
+      this.repository = repository;
+      this.scheduler = scheduler;
+      this.hedgePercentile = source.hedgePercentile();
+      String cacheDirectory = source.cacheDirectory();
+      this.cache =
+          cacheDirectory == null
+              ? null
+              : new PageCache(Path.of(cacheDirectory), source.cacheMaxSize());
+    }
+
+    /** Lists the repositories of the owner, which can be an organization or a user. */
+    static List<String> listRepositories(Source source, RequestScheduler scheduler) {
+      try {
+        List<String> repositories = new ArrayList<>();
+        String url = source.apiUrl() + "/orgs/" + source.owner() + "/repos?per_page=" + PAGE_SIZE;
+        boolean firstPage = true;
+        while (url != null) {
+          HttpRequest request =
+              HttpRequest.newBuilder(URI.create(url))
+                  .setHeader("Authorization", "token " + source.accessToken())
+                  .setHeader("Accept-Encoding", "gzip")
+                  .GET()
+                  .build();
+          HttpResponse<InputStream> response =
+              scheduler.send(request, BodyHandlers.ofInputStream());
+          if (firstPage && response.statusCode() == 404) {
+            // not an organization
+            response.body().close();
+            url = source.apiUrl() + "/users/" + source.owner() + "/repos?per_page=" + PAGE_SIZE;
+            firstPage = false;
+            continue;
+          }
+          firstPage = false;
+          try (InputStream body = response.body()) {
+            if (response.statusCode() != 200) {
+              throw new IllegalStateException(
+                  "Unexpected response code when listing repositories: " + response.statusCode());
+            }
+            parseRepositoryNames(decoded(response, body), repositories::add);
+          }
+          url = response.headers().firstValue("link").map(l -> links(l).get("next")).orElse(null);
+        }
+        return repositories;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    static Map<String, String> links(String linkHeader) {
+      Map<String, String> links = new LinkedHashMap<>();
+      for (String link : linkHeader.split(",")) {
+        // e.g.
+        // <https://api.github.com/repositories/343344332/releases?per_page=1&page=3>; rel="next"
+        String[] urlRel = link.split(";");
+        if (urlRel.length < 2) {
+          continue;
+        }
+        String url = urlRel[0].trim();
+        // removing the < and >
+        url = url.substring(1, url.length() - 1);
+        for (int i = 1; i < urlRel.length; i++) {
+          String param = urlRel[i].trim();
+          if (param.startsWith("rel=")) {
+            String rel = param.substring("rel=".length()).replace("\"", "");
+            // a link can have several space-separated relations, e.g. rel="next last"
+            for (String r : rel.split(" ")) {
+              links.put(r, url);
+            }
+          }
+        }
+      }
+      return links;
+    }
+
+    static int pageNumber(String url) {
+      Matcher matcher = PAGE_PARAMETER.matcher(url);
+      if (matcher.find()) {
+        return Integer.parseInt(matcher.group(2));
+      } else {
+        throw new IllegalArgumentException("No page parameter in " + url);
+      }
+    }
+
+    /**
+     * Percent-encodes each segment of a path, e.g. a tag name, which can contain {@code #}, {@code
+     * %}, spaces, etc.
+     */
+    static String encodePath(String path) {
+      return Arrays.stream(path.split("/", -1))
+          .map(segment -> URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20"))
+          .collect(Collectors.joining("/"));
+    }
+
+    static String pageUrl(String url, int page) {
+      return PAGE_PARAMETER.matcher(url).replaceFirst("$1" + page);
+    }
+
+    @Override
+    public List<Release> list() {
+      return index("").toList();
+    }
+
+    @Override
+    public List<Release> list(String tagPrefix) {
+      return index(tagPrefix).toList();
+    }
+
+    /**
+     * Lists the releases, resolving only the tags with the prefix if it takes fewer requests.
+     *
+     * <p>The first page tells how many pages a full listing takes. If fewer tags with the prefix
+     * are not in the first page, they are resolved to releases one by one. Draft releases are not
+     * returned this way, unless they are in the first page.
+     */
+    @Override
+    public ReleaseIndex index(String tagPrefix) {
+      ReleaseIndex.Builder releases = new ReleaseIndex.Builder();
+      listPages(tagPrefix, releases::addAll);
+      return releases.build();
+    }
+
+    /** The most recent releases, the first page of the listing. */
+    ReleaseIndex firstPage() {
+      try {
+        return timedPage(firstPageUri()).releases();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Lists the releases like {@link #index(String)}, passing each page as soon as it is in. */
+    @Override
+    public void listPages(String tagPrefix, Consumer<ReleaseIndex> pages) {
+      listPages(tagPrefix, pages, false);
+    }
+
+    /**
+     * Lists the pages from the last one to the first one.
+     *
+     * <p>GitHub lists the newest releases first, so deleting a release only shifts the releases
+     * after it, which are in the pages already passed. The first page is requested first to get the
+     * number of pages, it is passed last.
+     */
+    @Override
+    public void listPagesOldestFirst(String tagPrefix, Consumer<ReleaseIndex> pages) {
+      listPages(tagPrefix, pages, true);
+    }
+
+    private void listPages(String tagPrefix, Consumer<ReleaseIndex> pages, boolean oldestFirst) {
+      try {
+        Page firstPage = timedPage(firstPageUri());
+        String last = firstPage.links().get("last");
+        if (last == null) {
+          listSequentially(firstPage, pages);
+        } else if (tagPrefix == null || tagPrefix.isEmpty()) {
+          listConcurrently(firstPage, last, pages, oldestFirst);
+        } else {
+          Set<String> listed = new HashSet<>();
+          for (int i = 0; i < firstPage.releases().size(); i++) {
+            listed.add(firstPage.releases().tagString(i));
+          }
+          List<String> candidates = new ArrayList<>();
+          for (String tag : listTags(tagPrefix)) {
+            if (!listed.contains(tag)) {
+              candidates.add(tag);
+            }
+          }
+          if (candidates.size() < pageNumber(last) - 1) {
+            pages.accept(firstPage.releases());
+            pages.accept(ReleaseIndex.of(resolve(candidates)));
+          } else {
+            listConcurrently(firstPage, last, pages, oldestFirst);
+          }
+        }
+        if (cache != null) {
+          cache.evict();
+        }
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Gets the releases of the tags, skipping the tags without (published) release. */
+    private List<Release> resolve(List<String> tags) throws Exception {
+      ThreadFactory threadFactory = Thread.ofVirtual().name("resolve-", 0).factory();
+      ExecutorService executor = Executors.newFixedThreadPool(MAX_IN_FLIGHT_PAGES, threadFactory);
+      try {
+        List<Future<Release>> futures = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+          futures.add(executor.submit(() -> release(tag)));
+        }
+        List<Release> releases = new ArrayList<>(tags.size());
+        for (Future<Release> future : futures) {
+          Release release = future.get();
+          if (release != null) {
+            releases.add(release);
+          }
+        }
+        return releases;
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    private Release release(String tag) throws IOException, InterruptedException {
+      HttpRequest request = requestBuilder("/releases/tags/" + encodePath(tag)).GET().build();
+      return scheduler.read(
+          request,
+          response -> {
+            try (InputStream body = response.body()) {
+              if (response.statusCode() == 404) {
+                // tag without release, or draft release
+                return null;
+              } else if (response.statusCode() != 200) {
+                throw new IllegalStateException(
+                    "Unexpected response code when getting release of tag "
+                        + tag
+                        + ": "
+                        + response.statusCode());
+              }
+              return parseRelease(
+                  new JsonReader(
+                      new BufferedReader(
+                          new InputStreamReader(decoded(response, body), StandardCharsets.UTF_8))));
+            }
+          });
+    }
+
+    private void listSequentially(Page firstPage, Consumer<ReleaseIndex> pages) throws Exception {
+      pages.accept(firstPage.releases());
+      String next = firstPage.links().get("next");
+      while (next != null) {
+        Page page = page(URI.create(next));
+        pages.accept(page.releases());
+        next = page.links().get("next");
+      }
+    }
+
+    private void listConcurrently(
+        Page firstPage, String lastUrl, Consumer<ReleaseIndex> pages, boolean oldestFirst)
+        throws Exception {
+      int lastPage = pageNumber(lastUrl);
+      ThreadFactory threadFactory = Thread.ofVirtual().name("list-", 0).factory();
+      ExecutorService executor = Executors.newFixedThreadPool(MAX_IN_FLIGHT_PAGES, threadFactory);
+      try {
+        // pages fetched ahead of the consumer, which holds the listing back when it is slower
+        Deque<Future<Page>> ahead = new ArrayDeque<>(MAX_PAGES_AHEAD);
+        int next = 2;
+        for (; next <= lastPage && ahead.size() < MAX_PAGES_AHEAD; next++) {
+          ahead.add(submitPage(executor, lastUrl, oldestFirst ? lastPage + 2 - next : next));
+        }
+        if (!oldestFirst) {
+          pages.accept(firstPage.releases());
+        }
+        while (!ahead.isEmpty()) {
+          Page page = ahead.poll().get();
+          if (next <= lastPage) {
+            ahead.add(submitPage(executor, lastUrl, oldestFirst ? lastPage + 2 - next : next));
+            next++;
+          }
+          pages.accept(page.releases());
+        }
+        if (oldestFirst) {
+          pages.accept(firstPage.releases());
+        }
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    private Future<Page> submitPage(ExecutorService executor, String lastUrl, int number) {
+      URI uri = URI.create(pageUrl(lastUrl, number));
+      return executor.submit(() -> hedgePercentile > 0 ? hedgedPage(uri) : page(uri));
+    }
+
+    /**
+     * Gets a page, with a second request if the first one is slower than the hedge percentile of
+     * the page latencies so far. The first response wins, the other request is cancelled.
+     */
+    private Page hedgedPage(URI uri) throws Exception {
+      long hedgeDelay = hedgeDelay();
+      if (hedgeDelay < 0) {
+        return timedPage(uri);
+      }
+      ExecutorService attempts = Executors.newVirtualThreadPerTaskExecutor();
+      try {
+        CompletionService<Page> completion = new ExecutorCompletionService<>(attempts);
+        completion.submit(() -> timedPage(uri));
+        Future<Page> first = completion.poll(hedgeDelay, TimeUnit.NANOSECONDS);
+        if (first == null) {
+          scheduler.metrics().hedged();
+          completion.submit(() -> timedPage(uri));
+          first = completion.take();
+          if (first.state() == Future.State.FAILED) {
+            // the other request can still succeed
+            first = completion.take();
+          }
+        }
+        return first.get();
+      } catch (ExecutionException e) {
+        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+      } finally {
+        attempts.shutdownNow();
+      }
+    }
+
+    /** The hedge percentile of the page latencies, -1 if there are not enough samples yet. */
+    private long hedgeDelay() {
+      if (pageLatencies.size() < MIN_HEDGE_SAMPLES) {
+        return -1;
+      }
+      List<Long> latencies = new ArrayList<>(pageLatencies);
+      Collections.sort(latencies);
+      return Metrics.percentile(latencies, hedgePercentile);
+    }
+
+    private Page timedPage(URI uri) throws IOException, InterruptedException {
+      long start = System.nanoTime();
+      Page page = page(uri);
+      pageLatencies.add(System.nanoTime() - start);
+      return page;
+    }
+
+    /** Requests the first page in the background, the listing then starts with its response. */
+    void prefetchFirstPage() {
+      URI uri = firstPageUri();
+      scheduler.prefetch(pageRequest(uri, cache == null ? null : cache.get(uri.toString())));
+    }
+
+    private URI firstPageUri() {
+      return URI.create(repositoryUrl() + "/releases?per_page=" + PAGE_SIZE);
+    }
+
+    private HttpRequest pageRequest(URI uri, CachedPage cached) {
+      Builder requestBuilder = requestBuilder().uri(uri).GET();
+      if (cached != null) {
+        if (cached.etag() != null) {
+          requestBuilder.setHeader("If-None-Match", cached.etag());
+        }
+        if (cached.lastModified() != null) {
+          requestBuilder.setHeader("If-Modified-Since", cached.lastModified());
+        }
+      }
+      return requestBuilder.build();
+    }
+
+    private Page page(URI uri) throws IOException, InterruptedException {
+      CachedPage cached = cache == null ? null : cache.get(uri.toString());
+      HttpResponse<InputStream> response = scheduler.prefetched(uri);
+      if (response != null) {
+        try {
+          return page(uri, cached, response);
+        } catch (IOException e) {
+          // the request is sent again
+        }
+      }
+      return scheduler.read(pageRequest(uri, cached), r -> page(uri, cached, r));
+    }
+
+    private Page page(URI uri, CachedPage cached, HttpResponse<InputStream> response)
+        throws IOException {
+      if (response.statusCode() == 304 && cached != null) {
+        response.body().close();
+        return cached.page();
+      }
+      ReleaseIndex.Builder releases = new ReleaseIndex.Builder();
+      try (InputStream body = response.body()) {
+        if (response.statusCode() != 200) {
+          throw new IllegalStateException(
+              "Unexpected response code when listing releases: " + response.statusCode());
+        }
+        parseReleases(decoded(response, body), releases);
+      }
+      Map<String, String> links =
+          response.headers().firstValue("link").map(l -> links(l)).orElse(Collections.emptyMap());
+      scheduler.metrics().pageParsed();
+      Page page = new Page(releases.build(), links);
+      if (cache != null) {
+        String etag = response.headers().firstValue("etag").orElse(null);
+        String lastModified = response.headers().firstValue("last-modified").orElse(null);
+        if (etag != null || lastModified != null) {
+          cache.put(uri.toString(), new CachedPage(etag, lastModified, page));
+        }
+      }
+      return page;
+    }
+
+    @Override
+    public void delete(Release release) {
+      HttpRequest request = requestBuilder().DELETE().uri(URI.create(release.url())).build();
+      HttpResponse<Void> response;
+      try {
+        response = scheduler.send(request, BodyHandlers.discarding());
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      // 404: already deleted, e.g. by a previous run
+      if (response.statusCode() != 204 && response.statusCode() != 404) {
+        throw new IllegalStateException(
+            "Unexpected response code when deleting release "
+                + release.id()
+                + ": "
+                + response.statusCode());
+      }
+    }
+
+    @Override
+    public void deleteTag(String tag) {
+      // https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/git/refs/tags/v3.9.0-alpha-test.1
+      HttpRequest request = requestBuilder("/git/refs/tags/" + encodePath(tag)).DELETE().build();
+      HttpResponse<Void> response;
+      try {
+        response = scheduler.send(request, BodyHandlers.discarding());
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+      // 422 "Reference does not exist": already deleted, e.g. by a previous run
+      int status = response.statusCode();
+      if (status != 204 && status != 404 && status != 422) {
+        throw new IllegalStateException(
+            "Unexpected response code when deleting tag " + tag + ": " + status);
+      }
+    }
+
+    /** Lists the tags with the matching refs endpoint, which returns all the refs at once. */
+    @Override
+    public List<String> listTags(String prefix) {
+      try {
+        List<String> tags = new ArrayList<>();
+        String url = repositoryUrl() + "/git/matching-refs/tags/" + encodePath(prefix);
+        while (url != null) {
+          HttpResponse<InputStream> response =
+              scheduler.read(
+                  requestBuilder().uri(URI.create(url)).GET().build(),
+                  r -> {
+                    List<String> pageTags = new ArrayList<>();
+                    try (InputStream body = r.body()) {
+                      if (r.statusCode() != 200) {
+                        throw new IllegalStateException(
+                            "Unexpected response code when listing tags: " + r.statusCode());
+                      }
+                      parseTagNames(decoded(r, body), pageTags::add);
+                    }
+                    tags.addAll(pageTags);
+                    return r;
+                  });
+          // not documented as paginated, following the link header just in case
+          url = response.headers().firstValue("link").map(l -> links(l).get("next")).orElse(null);
+        }
+        return tags;
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+
+    String releaseUrl(long id) {
+      return repositoryUrl() + "/releases/" + id;
+    }
+
+    private Builder requestBuilder() {
+      return headers(HttpRequest.newBuilder());
+    }
+
+    private Builder requestBuilder(String path) {
+      return headers(HttpRequest.newBuilder().uri(URI.create(repositoryUrl() + path)));
+    }
+
+    private String repositoryUrl() {
+      return source.apiUrl() + "/repos/" + source.owner() + "/" + repository;
+    }
+
+    private Builder headers(Builder builder) {
+      return builder
+          .setHeader("Authorization", "token " + source.accessToken())
+          .setHeader("Accept-Encoding", "gzip");
+    }
+  }
+
+  static class GithubGraphQlReleaseAccess implements ReleaseAccess {
+
+    static final int PAGE_SIZE = 100;
+    static final int TAG_BATCH_SIZE = 50;
+
+    private static final String LIST_QUERY =
+        "query($owner: String!, $name: String!, $cursor: String) {"
+            + " repository(owner: $owner, name: $name) {"
+            + " releases(first: "
+            + PAGE_SIZE
+            + ", after: $cursor) {"
+            + " pageInfo { hasNextPage endCursor }"
+            + " nodes { databaseId tagName publishedAt isDraft isPrerelease tag { id } } } } }";
+
+    private final RequestScheduler scheduler;
+    private final Source source;
+    private final String repository;
+    private final URI endpoint;
+    // there is no release deletion in the GraphQL API
+    private final GitubRestApiReleaseAccess restAccess;
+    private final Map<String, String> tagRefIds = new ConcurrentHashMap<>();
+
+    GithubGraphQlReleaseAccess(
+        Source source, String repository, RequestScheduler scheduler, URI endpoint) {
+      this.scheduler = scheduler;
+      this.source = source;
+      this.repository = repository;
+      this.endpoint = endpoint;
+      this.restAccess = new GitubRestApiReleaseAccess(source, repository, scheduler);
+    }
+
+    @Override
+    public List<Release> list() {
+      List<Release> releases = new ArrayList<>();
+      String cursor = null;
+      boolean hasMore = true;
+      while (hasMore) {
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("owner", source.owner());
+        variables.put("name", repository);
+        variables.put("cursor", cursor);
+        JsonObject data = execute(LIST_QUERY, variables, true).getAsJsonObject("data");
+        JsonObject page = data.getAsJsonObject("repository").getAsJsonObject("releases");
+        scheduler.metrics().pageParsed();
+        for (JsonElement element : page.getAsJsonArray("nodes")) {
+          JsonObject node = element.getAsJsonObject();
+          long id = node.get("databaseId").getAsLong();
+          String tag = node.get("tagName").getAsString();
+          ZonedDateTime publishedAt =
+              node.get("publishedAt").isJsonNull()
+                  ? null
+                  : ZonedDateTime.parse(
+                      node.get("publishedAt").getAsString(), DateTimeFormatter.ISO_ZONED_DATE_TIME);
+          if (node.get("tag").isJsonObject()) {
+            tagRefIds.put(tag, node.getAsJsonObject("tag").get("id").getAsString());
+          }
+          releases.add(
+              new Release(
+                  id,
+                  restAccess.releaseUrl(id),
+                  tag,
+                  publishedAt,
+                  node.get("isDraft").getAsBoolean(),
+                  node.get("isPrerelease").getAsBoolean()));
+        }
+        JsonObject pageInfo = page.getAsJsonObject("pageInfo");
+        hasMore = pageInfo.get("hasNextPage").getAsBoolean();
+        cursor = hasMore ? pageInfo.get("endCursor").getAsString() : null;
+      }
+      return releases;
+    }
+
+    @Override
+    public void delete(Release release) {
+      restAccess.delete(release);
     }
 
-    String command = args[0];
-    if ("in".equals(command)) {
-      log("Getting special version <DELETED> is a no-op; returning it as is");
-      out(JSON_DELETED_VERSION);
-    } else if ("out".equals(command)) {
-      Input input = GSON.fromJson(builder.toString(), Input.class);
-      ReleaseAccess access = new GitubRestApiReleaseAccess(input);
-
-      List<Release> releases = access.list();
-      List<Release> filteredReleases = filterByTag(releases, input.params().tagFilter());
-      if (!filteredReleases.isEmpty()) {
-        Collections.sort(filteredReleases, Comparator.comparing(Release::publication));
-      }
-      List<Release> toDeleteReleases =
-          filterForDeletion(filteredReleases, input.params().keepLastN());
-
-      logGreen("Tag filter: " + input.params().tagFilter());
-
-      filteredReleases.forEach(
-          r -> {
-            if (toDeleteReleases.contains(r)) {
-              logYellow("Removing release with tag " + r.tag());
-              try {
-                access.delete(r);
-                access.deleteTag(r);
-              } catch (Exception e) {
-                logRed("Error while deleting release " + r + ": " + e.getMessage());
-              }
-            } else {
-              log(" Keeping release with tag " + r.tag());
-            }
-          });
+    @Override
+    public void deleteTag(String tag) {
+      restAccess.deleteTag(tag);
+    }
+
+    @Override
+    public List<String> listTags(String prefix) {
+      return restAccess.listTags(prefix);
+    }
+
+    @Override
+    public void deleteTag(Release release) {
+      Exception failure = deleteTags(Collections.singletonList(release)).get(release);
+      if (failure != null) {
+        throw failure instanceof RuntimeException
+            ? (RuntimeException) failure
+            : new RuntimeException(failure);
+      }
+    }
+
+    /** Deletes the tag refs with aliased deleteRef mutations in a single request. */
+    @Override
+    public Map<Release, Exception> deleteTags(List<Release> releases) {
+      Map<Release, Exception> failures = new HashMap<>();
+      List<Release> batch = new ArrayList<>(releases.size());
+      for (Release release : releases) {
+        if (tagRefIds.containsKey(release.tag())) {
+          batch.add(release);
+        } else {
+          // ref ID unknown, falling back to the REST API
+          try {
+            restAccess.deleteTag(release);
+          } catch (Exception e) {
+            failures.put(release, e);
+          }
+        }
+      }
+      if (batch.isEmpty()) {
+        return failures;
+      }
+      StringBuilder declarations = new StringBuilder();
+      StringBuilder mutations = new StringBuilder();
+      Map<String, Object> variables = new HashMap<>();
+      for (int i = 0; i < batch.size(); i++) {
+        declarations.append(i == 0 ? "" : ", ").append("$r").append(i).append(": ID!");
+        mutations
+            .append(" d")
+            .append(i)
+            .append(": deleteRef(input: {refId: $r")
+            .append(i)
+            .append("}) { clientMutationId }");
+        variables.put("r" + i, tagRefIds.get(batch.get(i).tag()));
+      }
+      JsonObject response =
+          execute("mutation(" + declarations + ") {" + mutations + " }", variables, false);
+      if (response.has("errors")) {
+        for (JsonElement element : response.getAsJsonArray("errors")) {
+          JsonObject error = element.getAsJsonObject();
+          String message = error.get("message").getAsString();
+          if (error.has("type") && "NOT_FOUND".equals(error.get("type").getAsString())) {
+            // already deleted, e.g. by a previous run
+            continue;
+          }
+          if (error.has("path")) {
+            String alias = error.getAsJsonArray("path").get(0).getAsString();
+            Release release = batch.get(Integer.parseInt(alias.substring(1)));
+            failures.put(release, new IllegalStateException(message));
+          } else {
+            batch.forEach(r -> failures.putIfAbsent(r, new IllegalStateException(message)));
+          }
+        }
+      }
+      return failures;
+    }
+
+    @Override
+    public int tagDeletionBatchSize() {
+      return TAG_BATCH_SIZE;
+    }
+
+    /**
+     * Sends a GraphQL request. A read-only query is retried after errors like a GET, a mutation is
+     * not.
+     */
+    private JsonObject execute(String query, Map<String, Object> variables, boolean readOnly) {
+      Map<String, Object> body = new HashMap<>();
+      body.put("query", query);
+      body.put("variables", variables);
+      HttpRequest request =
+          HttpRequest.newBuilder(endpoint)
+              .setHeader("Authorization", "bearer " + source.accessToken())
+              .setHeader("Content-Type", "application/json")
+              .setHeader("Accept-Encoding", "gzip")
+              .POST(BodyPublishers.ofString(GSON.toJson(body)))
+              .build();
+      try {
+        return scheduler.read(
+            request,
+            response -> {
+              try (InputStream in = response.body()) {
+                if (response.statusCode() != 200) {
+                  throw new IllegalStateException(
+                      "Unexpected response code for GraphQL request: " + response.statusCode());
+                }
+                Reader reader =
+                    new InputStreamReader(decoded(response, in), StandardCharsets.UTF_8);
+                JsonObject result = JsonParser.parseReader(reader).getAsJsonObject();
+                if (!result.has("data") || result.get("data").isJsonNull()) {
+                  throw new IllegalStateException(
+                      "GraphQL request failed: " + result.get("errors"));
+                }
+                return result;
+              }
+            },
+            readOnly);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  static void parseRepositoryNames(InputStream in, Consumer<String> consumer) throws IOException {
+    JsonReader reader =
+        new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("name".equals(reader.nextName())) {
+          consumer.accept(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endArray();
+  }
+
+  /** Streams the tag names of a matching refs response, e.g. {@code v1.0.0} for a tag ref. */
+  static void parseTagNames(InputStream in, Consumer<String> consumer) throws IOException {
+    JsonReader reader =
+        new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    reader.beginArray();
+    while (reader.hasNext()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
+        if ("ref".equals(reader.nextName())) {
+          String ref = reader.nextString();
+          if (ref.startsWith(TAG_REF_PREFIX)) {
+            consumer.accept(ref.substring(TAG_REF_PREFIX.length()));
+          }
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+    }
+    reader.endArray();
+  }
+
+  /**
+   * The body of a JSON response, decompressed as it is read if the server gzipped it.
+   *
+   * <p>Requests send {@code Accept-Encoding: gzip}, as {@link HttpClient} does not negotiate
+   * compression by itself. The caller closes the body.
+   */
+  static InputStream decoded(HttpResponse<?> response, InputStream body) throws IOException {
+    boolean gzip =
+        response.headers().allValues("content-encoding").stream()
+            .anyMatch(e -> e.trim().equalsIgnoreCase("gzip"));
+    return gzip ? new GZIPInputStream(body, 8192) : body;
+  }
+
+  /**
+   * Streams a page of releases from the GitHub REST API into an index.
+   *
+   * <p>Only the fields the index needs are read, the other subtrees (author, assets, body, etc) are
+   * skipped without being materialized. No {@link Release} is created.
+   */
+  static void parseReleases(InputStream in, ReleaseIndex.Builder releases) throws IOException {
+    JsonReader reader =
+        new JsonReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8)));
+    reader.beginArray();
+    while (reader.hasNext()) {
+      parseRelease(reader, releases);
+    }
+    reader.endArray();
+  }
+
+  private static Release parseRelease(JsonReader reader) throws IOException {
+    ReleaseIndex.Builder release = new ReleaseIndex.Builder();
+    parseRelease(reader, release);
+    return release.build().release(0);
+  }
+
+  private static void parseRelease(JsonReader reader, ReleaseIndex.Builder releases)
+      throws IOException {
+    long id = 0;
+    String url = null;
+    String tag = null;
+    long publishedAt = ReleaseIndex.NO_PUBLICATION;
+    boolean draft = false;
+    boolean prerelease = false;
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      switch (name) {
+        case "id" -> id = reader.nextLong();
+        case "url" -> url = reader.nextString();
+        case "tag_name" -> tag = reader.nextString();
+        case "published_at" -> publishedAt = ReleaseIndex.epochSecond(reader.nextString());
+        case "draft" -> draft = reader.nextBoolean();
+        case "prerelease" -> prerelease = reader.nextBoolean();
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    releases.add(id, url, tag, publishedAt, draft, prerelease);
+  }
+
+  /**
+   * Columnar index of releases, for repositories with many releases.
+   *
+   * <p>Ids, publication dates (epoch seconds) and flags are stored in primitive arrays, tags in a
+   * single character table with offsets. URLs are stored once as a prefix, as they end with the
+   * release id. {@link Release} instances are created only on demand, e.g. for the releases to
+   * delete.
+   */
+  static class ReleaseIndex {
+
+    /** Sorts unpublished releases as the newest. */
+    static final long NO_PUBLICATION = Long.MAX_VALUE;
+
+    private static final byte DRAFT = 1;
+    private static final byte PRERELEASE = 2;
+    private static final byte NO_TAG = 4;
+
+    private final int size;
+    private final long[] ids;
+    private final long[] publications;
+    private final byte[] flags;
+    private final char[] tags;
+    private final int[] tagOffsets;
+    private final String urlPrefix;
+    private final Map<Integer, String> otherUrls;
+
+    private ReleaseIndex(Builder builder) {
+      this.size = builder.size;
+      this.ids = Arrays.copyOf(builder.ids, size);
+      this.publications = Arrays.copyOf(builder.publications, size);
+      this.flags = Arrays.copyOf(builder.flags, size);
+      this.tags = Arrays.copyOf(builder.tags, builder.tagLength);
+      this.tagOffsets = Arrays.copyOf(builder.tagOffsets, size + 1);
+      this.urlPrefix = builder.urlPrefix;
+      this.otherUrls = new HashMap<>(builder.otherUrls);
+    }
+
+    static ReleaseIndex of(List<Release> releases) {
+      Builder builder = new Builder();
+      releases.forEach(builder::add);
+      return builder.build();
+    }
+
+    int size() {
+      return size;
+    }
+
+    long id(int position) {
+      return ids[position];
+    }
+
+    /** The publication date in epoch seconds, {@link #NO_PUBLICATION} if not published. */
+    long publication(int position) {
+      return publications[position];
+    }
+
+    boolean draft(int position) {
+      return (flags[position] & DRAFT) != 0;
+    }
+
+    boolean prerelease(int position) {
+      return (flags[position] & PRERELEASE) != 0;
+    }
+
+    /** A view of the tag in the table, to match it without creating a string. */
+    CharSequence tag(int position) {
+      if ((flags[position] & NO_TAG) != 0) {
+        return null;
+      }
+      int start = tagOffsets[position];
+      return CharBuffer.wrap(tags, start, tagOffsets[position + 1] - start);
+    }
+
+    String tagString(int position) {
+      if ((flags[position] & NO_TAG) != 0) {
+        return null;
+      }
+      int start = tagOffsets[position];
+      return new String(tags, start, tagOffsets[position + 1] - start);
+    }
+
+    boolean tagStartsWith(int position, String prefix) {
+      if ((flags[position] & NO_TAG) != 0) {
+        return prefix.isEmpty();
+      }
+      int start = tagOffsets[position];
+      if (tagOffsets[position + 1] - start < prefix.length()) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (tags[start + i] != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    String url(int position) {
+      if (otherUrls.containsKey(position)) {
+        return otherUrls.get(position);
+      }
+      return urlPrefix + ids[position];
+    }
+
+    Release release(int position) {
+      long publication = publications[position];
+      return new Release(
+          ids[position],
+          url(position),
+          tagString(position),
+          publication == NO_PUBLICATION
+              ? null
+              : ZonedDateTime.ofInstant(Instant.ofEpochSecond(publication), ZoneOffset.UTC),
+          draft(position),
+          prerelease(position));
+    }
+
+    List<Release> toList() {
+      List<Release> releases = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        releases.add(release(i));
+      }
+      return releases;
+    }
+
+    /**
+     * The positions of the releases, from the oldest to the newest.
+     *
+     * <p>Releases are ordered by publication date, then by id. The GitHub API lists the newest
+     * first, so the positions are just reversed in the common case, they are merge sorted
+     * otherwise.
+     */
+    int[] oldestFirst() {
+      int[] positions = new int[size];
+      boolean newestFirst = true;
+      for (int i = 0; i < size; i++) {
+        positions[i] = size - 1 - i;
+        if (i > 0 && compare(i - 1, i) <= 0) {
+          newestFirst = false;
+        }
+      }
+      if (!newestFirst) {
+        int[] buffer = new int[size];
+        for (int width = 1; width < size; width *= 2) {
+          for (int low = 0; low < size - width; low += 2 * width) {
+            merge(positions, buffer, low, low + width, Math.min(low + 2 * width, size));
+          }
+        }
+      }
+      return positions;
+    }
+
+    private void merge(int[] positions, int[] buffer, int low, int middle, int high) {
+      System.arraycopy(positions, low, buffer, low, high - low);
+      int left = low;
+      int right = middle;
+      for (int i = low; i < high; i++) {
+        if (right == high || (left < middle && compare(buffer[left], buffer[right]) <= 0)) {
+          positions[i] = buffer[left++];
+        } else {
+          positions[i] = buffer[right++];
+        }
+      }
+    }
+
+    private int compare(int position1, int position2) {
+      int result = Long.compare(publications[position1], publications[position2]);
+      return result != 0 ? result : Long.compare(ids[position1], ids[position2]);
+    }
+
+    /**
+     * Parses a GitHub date (e.g. {@code 2021-03-01T10:37:58Z}) to epoch seconds.
+     *
+     * <p>The format GitHub uses is parsed without intermediate objects, other formats go through
+     * {@link ZonedDateTime}.
+     */
+    static long epochSecond(String date) {
+      if (date.length() == 20
+          && date.charAt(4) == '-'
+          && date.charAt(7) == '-'
+          && date.charAt(10) == 'T'
+          && date.charAt(13) == ':'
+          && date.charAt(16) == ':'
+          && date.charAt(19) == 'Z') {
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        int hour = digits(date, 11, 13);
+        int minute = digits(date, 14, 16);
+        int second = digits(date, 17, 19);
+        if (year >= 0
+            && month >= 1
+            && month <= 12
+            && day >= 1
+            && day <= 31
+            && hour >= 0
+            && hour < 24
+            && minute >= 0
+            && minute < 60
+            && second >= 0
+            && second < 60) {
+          return epochDay(year, month, day) * 86_400 + hour * 3_600 + minute * 60 + second;
+        }
+      }
+      return ZonedDateTime.parse(date, DateTimeFormatter.ISO_ZONED_DATE_TIME).toEpochSecond();
+    }
+
+    private static int digits(String s, int start, int end) {
+      int value = 0;
+      for (int i = start; i < end; i++) {
+        char c = s.charAt(i);
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+        value = value * 10 + (c - '0');
+      }
+      return value;
+    }
+
+    /** Days since 1970-01-01 in the proleptic Gregorian calendar (see {@code LocalDate}). */
+    private static long epochDay(int year, int month, int day) {
+      long y = month <= 2 ? year - 1 : year;
+      long era = Math.floorDiv(y, 400);
+      long yearOfEra = y - era * 400;
+      long dayOfYear = (153L * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+      long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+      return era * 146_097 + dayOfEra - 719_468;
+    }
+
+    static class Builder {
+
+      private int size;
+      private long[] ids = new long[16];
+      private long[] publications = new long[16];
+      private byte[] flags = new byte[16];
+      private char[] tags = new char[256];
+      private int tagLength;
+      private int[] tagOffsets = new int[17];
+      private String urlPrefix;
+      private final Map<Integer, String> otherUrls = new HashMap<>();
+
+      Builder add(Release release) {
+        return add(
+            release.id(),
+            release.url(),
+            release.tag(),
+            release.publication() == null ? NO_PUBLICATION : release.publication().toEpochSecond(),
+            release.draft(),
+            release.prerelease());
+      }
+
+      Builder add(
+          long id, String url, String tag, long publication, boolean draft, boolean prerelease) {
+        byte releaseFlags = (byte) ((draft ? DRAFT : 0) | (prerelease ? PRERELEASE : 0));
+        if (tag == null) {
+          releaseFlags |= NO_TAG;
+        } else {
+          ensureTagCapacity(tag.length());
+          tag.getChars(0, tag.length(), tags, tagLength);
+          tagLength += tag.length();
+        }
+        return append(id, url, publication, releaseFlags);
+      }
+
+      Builder addAll(ReleaseIndex index) {
+        for (int i = 0; i < index.size; i++) {
+          int start = index.tagOffsets[i];
+          int length = index.tagOffsets[i + 1] - start;
+          ensureTagCapacity(length);
+          System.arraycopy(index.tags, start, tags, tagLength, length);
+          tagLength += length;
+          append(index.ids[i], index.url(i), index.publications[i], index.flags[i]);
+        }
+        return this;
+      }
+
+      private Builder append(long id, String url, long publication, byte releaseFlags) {
+        if (size == ids.length) {
+          int capacity = size * 2;
+          ids = Arrays.copyOf(ids, capacity);
+          publications = Arrays.copyOf(publications, capacity);
+          flags = Arrays.copyOf(flags, capacity);
+          tagOffsets = Arrays.copyOf(tagOffsets, capacity + 1);
+        }
+        ids[size] = id;
+        publications[size] = publication;
+        flags[size] = releaseFlags;
+        tagOffsets[size + 1] = tagLength;
+        String idSuffix = Long.toString(id);
+        if (urlPrefix == null && url != null && url.endsWith("/" + idSuffix)) {
+          urlPrefix = url.substring(0, url.length() - idSuffix.length());
+        }
+        if (url == null
+            || urlPrefix == null
+            || url.length() != urlPrefix.length() + idSuffix.length()
+            || !url.startsWith(urlPrefix)
+            || !url.endsWith(idSuffix)) {
+          otherUrls.put(size, url);
+        }
+        size++;
+        return this;
+      }
 
-      out(JSON_DELETED_VERSION);
-    } else if ("test".equals(command)) {
-      testSequence();
-    } else {
-      throw new IllegalArgumentException("command not supported: " + command);
-    }
-  }
+      private void ensureTagCapacity(int length) {
+        if (tagLength + length > tags.length) {
+          tags = Arrays.copyOf(tags, Math.max(tags.length * 2, tagLength + length));
+        }
+      }
 
-  private static void testSequence() {
-    Consumer<String> display = m -> logGreen(m);
-    String message;
-    int exitCode = 0;
-    try {
-      String testUri = "https://www.wikipedia.org/";
-      logYellow("Starting test sequence, trying to reach " + testUri);
-      HttpRequest request = HttpRequest.newBuilder().uri(new URI(testUri)).GET().build();
-      HttpResponse<Void> response =
-          HttpClient.newBuilder()
-              .connectTimeout(Duration.ofSeconds(60))
-              .build()
-              .send(request, BodyHandlers.discarding());
-      int statusClass = response.statusCode() - response.statusCode() % 100;
-      message = "Response code is " + response.statusCode();
-      if (statusClass != 200) {
-        display = m -> logRed(m);
-        exitCode = 1;
+      ReleaseIndex build() {
+        return new ReleaseIndex(this);
       }
-    } catch (Exception e) {
-      message = "Error during test sequence: " + e.getMessage();
-      display = m -> logRed(m);
-      exitCode = 1;
     }
-    display.accept(message);
-    System.exit(exitCode);
   }
 
-  static void logGreen(String message) {
-    log("\u001B[32m" + message + "\u001B[0m");
-  }
+  static class Page {
 
-  static void logYellow(String message) {
-    log("\u001B[33m" + message + "\u001B[0m");
-  }
+    private final ReleaseIndex releases;
+    private final Map<String, String> links;
 
-  static void logRed(String message) {
-    log("\u001B[31m" + message + "\u001B[0m");
-  }
+    Page(ReleaseIndex releases, Map<String, String> links) {
+      this.releases = releases;
+      this.links = links;
+    }
 
-  static void log(String message) {
-    System.err.println(message);
-  }
+    Page(List<Release> releases, Map<String, String> links) {
+      this(ReleaseIndex.of(releases), links);
+    }
 
-  static void out(String message) {
-    System.out.println(message);
-  }
+    ReleaseIndex releases() {
+      return releases;
+    }
 
-  static List<Release> filterByTag(List<Release> releases, String tagRegex) {
-    Pattern pattern = Pattern.compile(tagRegex);
-    return releases.stream()
-        .filter(r -> pattern.matcher(r.tag()).matches())
-        .collect(Collectors.toList());
+    Map<String, String> links() {
+      return links;
+    }
   }
 
-  static List<Release> filterForDeletion(List<Release> releases, int keepLastN) {
-    if (releases.isEmpty()) {
-      return Collections.emptyList();
-    } else if (keepLastN <= 0) {
-      // do not want to keep any, return all
-      return releases;
-    } else if (keepLastN >= releases.size()) {
-      // we want to keep more than we have, so nothing to delete
-      return Collections.emptyList();
-    } else {
-      releases = new ArrayList<>(releases);
-      Collections.sort(releases, Comparator.comparing(Release::publication));
-      return releases.subList(0, releases.size() - keepLastN);
+  static class CachedPage {
+
+    private final String etag;
+    private final String lastModified;
+    private final Page page;
+
+    CachedPage(String etag, String lastModified, Page page) {
+      this.etag = etag;
+      this.lastModified = lastModified;
+      this.page = page;
+    }
+
+    String etag() {
+      return etag;
+    }
+
+    String lastModified() {
+      return lastModified;
+    }
+
+    Page page() {
+      return page;
     }
   }
 
-  interface ReleaseAccess {
+  /**
+   * On-disk cache of parsed release pages, with their HTTP validators.
+   *
+   * <p>There is one compressed binary file per page URL. The least recently used pages are evicted
+   * when the cache grows beyond its maximum size.
+   */
+  static class PageCache {
 
-    List<Release> list();
+    private static final int FORMAT_VERSION = 4;
+    private static final int DRAFT = 1;
+    private static final int PRERELEASE = 2;
 
-    void delete(Release release);
+    private final Path directory;
+    private final long maxSize;
 
-    void deleteTag(Release release);
-  }
+    PageCache(Path directory, long maxSize) {
+      this.directory = directory;
+      this.maxSize = maxSize;
+    }
 
-  static class GitubRestApiReleaseAccess implements ReleaseAccess {
+    CachedPage get(String url) {
+      Path file = file(url);
+      if (!Files.isRegularFile(file)) {
+        return null;
+      }
+      try (DataInputStream in =
+          new DataInputStream(
+              new GZIPInputStream(new BufferedInputStream(Files.newInputStream(file))))) {
+        if (in.readInt() != FORMAT_VERSION || !url.equals(in.readUTF())) {
+          return null;
+        }
+        String etag = readNullableString(in);
+        String lastModified = readNullableString(in);
+        int linkCount = in.readInt();
+        Map<String, String> links = new LinkedHashMap<>(linkCount);
+        for (int i = 0; i < linkCount; i++) {
+          links.put(in.readUTF(), in.readUTF());
+        }
+        int releaseCount = in.readInt();
+        ReleaseIndex.Builder releases = new ReleaseIndex.Builder();
+        for (int i = 0; i < releaseCount; i++) {
+          long id = in.readLong();
+          String releaseUrl = readNullableString(in);
+          String tag = readNullableString(in);
+          long publishedAt = in.readLong();
+          byte flags = in.readByte();
+          releases.add(
+              id, releaseUrl, tag, publishedAt, (flags & DRAFT) != 0, (flags & PRERELEASE) != 0);
+        }
+        // marking the page as recently used
+        Files.setLastModifiedTime(file, FileTime.from(Instant.now()));
+        return new CachedPage(etag, lastModified, new Page(releases.build(), links));
+      } catch (IOException e) {
+        // corrupted or concurrently evicted entry, ignoring it
+        return null;
+      }
+    }
 
-    private final HttpClient client =
-        HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(60)).build();
+    void put(String url, CachedPage cachedPage) {
+      try {
+        Files.createDirectories(directory);
+        Path tmp = Files.createTempFile(directory, "page", ".tmp");
+        try (DataOutputStream out =
+            new DataOutputStream(
+                new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp))))) {
+          out.writeInt(FORMAT_VERSION);
+          out.writeUTF(url);
+          writeNullableString(out, cachedPage.etag());
+          writeNullableString(out, cachedPage.lastModified());
+          Page page = cachedPage.page();
+          out.writeInt(page.links().size());
+          for (Map.Entry<String, String> link : page.links().entrySet()) {
+            out.writeUTF(link.getKey());
+            out.writeUTF(link.getValue());
+          }
+          ReleaseIndex releases = page.releases();
+          out.writeInt(releases.size());
+          for (int i = 0; i < releases.size(); i++) {
+            out.writeLong(releases.id(i));
+            // a release without tag must be read back as such, not with an empty tag
+            writeNullableString(out, releases.url(i));
+            writeNullableString(out, releases.tagString(i));
+            out.writeLong(releases.publication(i));
+            out.writeByte(
+                (releases.draft(i) ? DRAFT : 0) | (releases.prerelease(i) ? PRERELEASE : 0));
+          }
+        }
+        Files.move(
+            tmp, file(url), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } catch (IOException e) {
+        logYellow("Could not cache page " + url + ": " + e.getMessage());
+      }
+    }
 
-    private final Input input;
+    /** Removes the least recently used pages until the cache fits in its maximum size. */
+    void evict() {
+      if (!Files.isDirectory(directory)) {
+        return;
+      }
+      try (Stream<Path> files = Files.list(directory)) {
+        List<Path> pages =
+            files
+                .filter(f -> f.getFileName().toString().endsWith(".page"))
+                .sorted(Comparator.comparing(PageCache::lastModifiedTime).reversed())
+                .toList();
+        long size = 0;
+        for (Path page : pages) {
+          size += Files.size(page);
+          if (size > maxSize) {
+            Files.deleteIfExists(page);
+          }
+        }
+      } catch (IOException e) {
+        logYellow("Error while evicting pages from cache: " + e.getMessage());
+      }
+    }
 
-    GitubRestApiReleaseAccess(Input input) {
-      this.input = input;
+    private Path file(String url) {
+      return directory.resolve(sha256(url) + ".page");
     }
 
-    static String nextLink(String linkHeader) {
-      String nextLink = null;
-      for (String link : linkHeader.split(",")) {
-        // e.g.
-        // <https://api.github.com/repositories/343344332/releases?per_page=1&page=3>; rel="next"
-        String[] urlRel = link.split(";");
-        if ("rel=\"next\"".equals(urlRel[1].trim())) {
-          String url = urlRel[0].trim();
-          // removing the < and >
-          nextLink = url.substring(1, url.length() - 1);
+    private static FileTime lastModifiedTime(Path file) {
+      try {
+        return Files.getLastModifiedTime(file);
+      } catch (IOException e) {
+        return FileTime.fromMillis(0);
+      }
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+      return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+      out.writeBoolean(value != null);
+      if (value != null) {
+        out.writeUTF(value);
+      }
+    }
+  }
+
+  /*
+   * Hand-written type adapters, so that the model classes are bound without reflection. This
+   * speeds up the first deserialization and avoids reflection configuration for native images.
+   */
+
+  static class InputTypeAdapter extends TypeAdapter<Input> {
+
+    @Override
+    public void write(JsonWriter out, Input input) throws IOException {
+      out.beginObject();
+      out.name("params");
+      GSON.toJson(input.params, Params.class, out);
+      out.name("source");
+      GSON.toJson(input.source, Source.class, out);
+      if (input.version != null) {
+        out.name("version").beginObject();
+        for (Map.Entry<String, String> field : input.version.entrySet()) {
+          out.name(field.getKey()).value(field.getValue());
         }
+        out.endObject();
       }
-      return nextLink;
+      out.endObject();
     }
 
     @Override
-    public List<Release> list() {
-      HttpRequest request = requestBuilder("/releases").GET().build();
-      try {
-        Type type = TypeToken.getParameterized(List.class, Release.class).getType();
-        List<Release> releases = new ArrayList<>();
-        boolean hasMore = true;
-        while (hasMore) {
-          HttpResponse<String> response =
-              client.send(request, HttpResponse.BodyHandlers.ofString());
-          releases.addAll(GSON.fromJson(response.body(), type));
-          Optional<String> link = response.headers().firstValue("link");
-          String nextLink;
-          if (link.isPresent() && (nextLink = nextLink(link.get())) != null) {
-            request = requestBuilder().uri(URI.create(nextLink)).GET().build();
-          } else {
-            hasMore = false;
+    public Input read(JsonReader in) throws IOException {
+      Input input = new Input();
+      in.beginObject();
+      while (in.hasNext()) {
+        switch (in.nextName()) {
+          case "params" -> input.params = GSON.fromJson(in, Params.class);
+          case "source" -> input.source = GSON.fromJson(in, Source.class);
+          case "version" -> {
+            if (in.peek() == JsonToken.NULL) {
+              in.nextNull();
+            } else {
+              input.version = new LinkedHashMap<>();
+              in.beginObject();
+              while (in.hasNext()) {
+                input.version.put(in.nextName(), in.nextString());
+              }
+              in.endObject();
+            }
           }
+          default -> in.skipValue();
         }
-        return releases;
-      } catch (Exception e) {
-        throw new RuntimeException(e);
       }
+      in.endObject();
+      return input;
     }
+  }
+
+  static class ParamsTypeAdapter extends TypeAdapter<Params> {
 
     @Override
-    public void delete(Release release) {
-      HttpRequest request = requestBuilder().DELETE().uri(URI.create(release.url())).build();
-      try {
-        HttpResponse<Void> response = client.send(request, BodyHandlers.discarding());
-        // TODO check response code
-      } catch (Exception e) {
-        throw new RuntimeException(e);
+    public void write(JsonWriter out, Params params) throws IOException {
+      out.beginObject();
+      out.name("tag_filter").value(params.tag_filter);
+      out.name("keep_last_n").value(params.keep_last_n);
+      out.name("keep_last_n_per_minor").value(params.keep_last_n_per_minor);
+      out.name("max_age").value(params.max_age);
+      out.name("skip_drafts").value(params.skip_drafts);
+      out.name("skip_prereleases").value(params.skip_prereleases);
+      out.name("sweep_orphaned_tags").value(params.sweep_orphaned_tags);
+      out.name("parallelism").value(params.parallelism);
+      if (params.rules != null) {
+        out.name("rules").beginArray();
+        for (Rule rule : params.rules) {
+          out.beginObject();
+          out.name("tag_filter").value(rule.tag_filter);
+          out.name("keep_last_n").value(rule.keep_last_n);
+          out.endObject();
+        }
+        out.endArray();
       }
+      out.name("max_duration").value(params.max_duration);
+      out.name("max_deletions").value(params.max_deletions);
+      out.name("max_requests").value(params.max_requests);
+      out.name("pipelined").value(params.pipelined);
+      out.name("verbose").value(params.verbose);
+      out.endObject();
     }
 
     @Override
-    public void deleteTag(Release release) {
-      // https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/git/refs/tags/v3.9.0-alpha-test.1
-      HttpRequest request = requestBuilder("/git/refs/tags/" + release.tag()).DELETE().build();
-      try {
-        HttpResponse<Void> response = client.send(request, BodyHandlers.discarding());
-        // TODO check response code
-      } catch (Exception e) {
-        throw new RuntimeException(e);
+    public Params read(JsonReader in) throws IOException {
+      Params params = new Params();
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.skipValue();
+          continue;
+        }
+        switch (name) {
+          case "tag_filter" -> params.tag_filter = in.nextString();
+          case "keep_last_n" -> params.keep_last_n = in.nextInt();
+          case "keep_last_n_per_minor" -> params.keep_last_n_per_minor = in.nextInt();
+          case "max_age" -> params.max_age = in.nextString();
+          case "skip_drafts" -> params.skip_drafts = in.nextBoolean();
+          case "skip_prereleases" -> params.skip_prereleases = in.nextBoolean();
+          case "sweep_orphaned_tags" -> params.sweep_orphaned_tags = in.nextBoolean();
+          case "parallelism" -> params.parallelism = in.nextInt();
+          case "rules" -> {
+            params.rules = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+              params.rules.add(readRule(in));
+            }
+            in.endArray();
+          }
+          case "max_duration" -> params.max_duration = in.nextString();
+          case "max_deletions" -> params.max_deletions = in.nextInt();
+          case "max_requests" -> params.max_requests = in.nextLong();
+          case "pipelined" -> params.pipelined = in.nextBoolean();
+          case "verbose" -> params.verbose = in.nextBoolean();
+          default -> in.skipValue();
+        }
       }
+      in.endObject();
+      return params;
     }
 
-    private Builder requestBuilder() {
-      return auth(HttpRequest.newBuilder());
+    private static Rule readRule(JsonReader in) throws IOException {
+      String tagFilter = null;
+      int keepLastN = 0;
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.skipValue();
+          continue;
+        }
+        switch (name) {
+          case "tag_filter" -> tagFilter = in.nextString();
+          case "keep_last_n" -> keepLastN = in.nextInt();
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      if (tagFilter == null) {
+        throw new IllegalArgumentException("tag_filter is required for a rule");
+      }
+      return new Rule(tagFilter, keepLastN);
     }
+  }
 
-    private Builder requestBuilder(String path) {
-      return auth(
-          HttpRequest.newBuilder()
-              .uri(
-                  URI.create(
-                      "https://api.github.com/repos/"
-                          + input.source().owner()
-                          + "/"
-                          + input.source().repository()
-                          + path)));
+  static class SourceTypeAdapter extends TypeAdapter<Source> {
+
+    @Override
+    public void write(JsonWriter out, Source source) throws IOException {
+      out.beginObject();
+      out.name("owner").value(source.owner);
+      out.name("repository").value(source.repository);
+      if (source.repositories != null) {
+        out.name("repositories").beginArray();
+        for (String repository : source.repositories) {
+          out.value(repository);
+        }
+        out.endArray();
+      }
+      out.name("repository_regex").value(source.repository_regex);
+      out.name("access_token").value(source.access_token);
+      out.name("api").value(source.api);
+      out.name("api_url").value(source.api_url);
+      out.name("cache_directory").value(source.cache_directory);
+      out.name("cache_max_size").value(source.cache_max_size);
+      out.name("request_timeout").value(source.request_timeout);
+      out.name("hedge_percentile").value(source.hedge_percentile);
+      out.name("journal_max_age").value(source.journal_max_age);
+      out.name("tag_filter").value(source.tag_filter);
+      out.endObject();
     }
 
-    private Builder auth(Builder builder) {
-      return builder.setHeader("Authorization", "token " + input.source().accessToken());
+    @Override
+    public Source read(JsonReader in) throws IOException {
+      Source source = new Source();
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        if (in.peek() == JsonToken.NULL) {
+          in.skipValue();
+          continue;
+        }
+        switch (name) {
+          case "owner" -> source.owner = in.nextString();
+          case "repository" -> source.repository = in.nextString();
+          case "repositories" -> {
+            source.repositories = new ArrayList<>();
+            in.beginArray();
+            while (in.hasNext()) {
+              source.repositories.add(in.nextString());
+            }
+            in.endArray();
+          }
+          case "repository_regex" -> source.repository_regex = in.nextString();
+          case "access_token" -> source.access_token = in.nextString();
+          case "api" -> source.api = in.nextString();
+          case "api_url" -> source.api_url = in.nextString();
+          case "cache_directory" -> source.cache_directory = in.nextString();
+          case "cache_max_size" -> source.cache_max_size = in.nextLong();
+          case "request_timeout" -> source.request_timeout = in.nextString();
+          case "hedge_percentile" -> source.hedge_percentile = in.nextInt();
+          case "journal_max_age" -> source.journal_max_age = in.nextString();
+          case "tag_filter" -> source.tag_filter = in.nextString();
+          default -> in.skipValue();
+        }
+      }
+      in.endObject();
+      return source;
     }
   }
 
-  static class ZonedDateTimeDeserializer implements JsonDeserializer<ZonedDateTime> {
+  static class ReleaseTypeAdapter extends TypeAdapter<Release> {
+
+    @Override
+    public void write(JsonWriter out, Release release) throws IOException {
+      out.beginObject();
+      out.name("id").value(release.id);
+      out.name("url").value(release.url);
+      out.name("tag_name").value(release.tag_name);
+      out.name("published_at")
+          .value(
+              release.published_at == null
+                  ? null
+                  : DateTimeFormatter.ISO_ZONED_DATE_TIME.format(release.published_at));
+      out.name("draft").value(release.draft);
+      out.name("prerelease").value(release.prerelease);
+      out.endObject();
+    }
 
     @Override
-    public ZonedDateTime deserialize(
-        JsonElement json, Type typeOfT, JsonDeserializationContext context)
-        throws JsonParseException {
-      return ZonedDateTime.parse(json.getAsString(), DateTimeFormatter.ISO_ZONED_DATE_TIME);
+    public Release read(JsonReader in) throws IOException {
+      return parseRelease(in);
     }
   }
 
@@ -282,6 +4576,8 @@ public class GithubReleaseDeleteResource {
     private String url;
     private ZonedDateTime published_at;
     private String tag_name;
+    private boolean draft;
+    private boolean prerelease;
 
     Release() {}
 
@@ -295,6 +4591,25 @@ public class GithubReleaseDeleteResource {
       this.published_at = published_at;
     }
 
+    Release(long id, String url, String tag, ZonedDateTime published_at) {
+      this(id, url, tag, published_at, false, false);
+    }
+
+    Release(
+        long id,
+        String url,
+        String tag,
+        ZonedDateTime published_at,
+        boolean draft,
+        boolean prerelease) {
+      this.id = id;
+      this.url = url;
+      this.tag_name = tag;
+      this.published_at = published_at;
+      this.draft = draft;
+      this.prerelease = prerelease;
+    }
+
     long id() {
       return this.id;
     }
@@ -311,6 +4626,14 @@ public class GithubReleaseDeleteResource {
       return this.published_at;
     }
 
+    boolean draft() {
+      return this.draft;
+    }
+
+    boolean prerelease() {
+      return this.prerelease;
+    }
+
     @Override
     public String toString() {
       return "Release{"
@@ -324,6 +4647,10 @@ public class GithubReleaseDeleteResource {
           + ", tag_name='"
           + tag_name
           + '\''
+          + ", draft="
+          + draft
+          + ", prerelease="
+          + prerelease
           + '}';
     }
 
@@ -349,6 +4676,7 @@ public class GithubReleaseDeleteResource {
 
     private Params params;
     private Source source;
+    private Map<String, String> version;
 
     Params params() {
       return params;
@@ -358,9 +4686,14 @@ public class GithubReleaseDeleteResource {
       return source;
     }
 
+    /** The version {@code check} and {@code in} get, null on the first check. */
+    Map<String, String> version() {
+      return version;
+    }
+
     @Override
     public String toString() {
-      return "Input{" + "params=" + params + ", source=" + source + '}';
+      return "Input{" + "params=" + params + ", source=" + source + ", version=" + version + '}';
     }
   }
 
@@ -368,6 +4701,138 @@ public class GithubReleaseDeleteResource {
 
     private String tag_filter;
     private int keep_last_n;
+    private int keep_last_n_per_minor;
+    private String max_age;
+    private boolean skip_drafts;
+    private boolean skip_prereleases;
+    private boolean sweep_orphaned_tags;
+    private int parallelism;
+    private List<Rule> rules;
+    private String max_duration;
+    private int max_deletions;
+    private long max_requests;
+    private boolean pipelined;
+    private boolean verbose;
+
+    String tagFilter() {
+      return tag_filter;
+    }
+
+    int keepLastN() {
+      return keep_last_n;
+    }
+
+    int keepLastNPerMinor() {
+      return keep_last_n_per_minor;
+    }
+
+    Duration maxAge() {
+      return max_age == null ? null : Duration.parse(max_age);
+    }
+
+    boolean skipDrafts() {
+      return skip_drafts;
+    }
+
+    boolean skipPrereleases() {
+      return skip_prereleases;
+    }
+
+    boolean sweepOrphanedTags() {
+      return sweep_orphaned_tags;
+    }
+
+    int parallelism() {
+      return parallelism <= 0 ? 1 : parallelism;
+    }
+
+    /** How long releases can be deleted for, null if unlimited. */
+    Duration maxDuration() {
+      return max_duration == null ? null : Duration.parse(max_duration);
+    }
+
+    /** The maximum number of releases to delete, 0 if unlimited. */
+    int maxDeletions() {
+      return Math.max(0, max_deletions);
+    }
+
+    /** The maximum number of requests of the run, 0 if unlimited. */
+    long maxRequests() {
+      return Math.max(0, max_requests);
+    }
+
+    /** Whether releases are deleted while they are listed. */
+    boolean pipelined() {
+      return pipelined;
+    }
+
+    /** Whether a line is logged for each kept and deleted release, instead of a summary. */
+    boolean verbose() {
+      return verbose;
+    }
+
+    /** The retention rules, {@code tag_filter}/{@code keep_last_n} and {@code rules} combined. */
+    List<Rule> rules() {
+      List<Rule> result = new ArrayList<>();
+      if (tag_filter != null) {
+        result.add(new Rule(tag_filter, keep_last_n));
+      }
+      if (rules != null) {
+        result.addAll(rules);
+      }
+      if (result.isEmpty()) {
+        throw new IllegalArgumentException("tag_filter or rules must be set");
+      }
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return "Params{"
+          + "tag_filter='"
+          + tag_filter
+          + '\''
+          + ", keep_last_n="
+          + keep_last_n
+          + ", keep_last_n_per_minor="
+          + keep_last_n_per_minor
+          + ", max_age='"
+          + max_age
+          + '\''
+          + ", skip_drafts="
+          + skip_drafts
+          + ", skip_prereleases="
+          + skip_prereleases
+          + ", sweep_orphaned_tags="
+          + sweep_orphaned_tags
+          + ", parallelism="
+          + parallelism
+          + ", rules="
+          + rules
+          + ", max_duration='"
+          + max_duration
+          + '\''
+          + ", max_deletions="
+          + max_deletions
+          + ", max_requests="
+          + max_requests
+          + ", pipelined="
+          + pipelined
+          + ", verbose="
+          + verbose
+          + '}';
+    }
+  }
+
+  static class Rule {
+
+    private final String tag_filter;
+    private final int keep_last_n;
+
+    Rule(String tag_filter, int keep_last_n) {
+      this.tag_filter = tag_filter;
+      this.keep_last_n = keep_last_n;
+    }
 
     String tagFilter() {
       return tag_filter;
@@ -379,15 +4844,28 @@ public class GithubReleaseDeleteResource {
 
     @Override
     public String toString() {
-      return "Params{" + "tag_filter='" + tag_filter + '\'' + ", keep_last_n=" + keep_last_n + '}';
+      return "Rule{" + "tag_filter='" + tag_filter + '\'' + ", keep_last_n=" + keep_last_n + '}';
     }
   }
 
   static class Source {
 
+    static final String DEFAULT_API_URL = "https://api.github.com";
+    static final long DEFAULT_CACHE_MAX_SIZE = 64 * 1024 * 1024;
+
     private String owner;
     private String repository;
+    private List<String> repositories;
+    private String repository_regex;
     private String access_token;
+    private String api;
+    private String api_url;
+    private String cache_directory;
+    private long cache_max_size;
+    private String request_timeout;
+    private int hedge_percentile;
+    private String journal_max_age;
+    private String tag_filter;
 
     String owner() {
       return owner;
@@ -397,10 +4875,83 @@ public class GithubReleaseDeleteResource {
       return repository;
     }
 
+    /** The explicit repositories, {@code repository} and {@code repositories} combined. */
+    List<String> repositories() {
+      List<String> result = new ArrayList<>();
+      if (repository != null) {
+        result.add(repository);
+      }
+      if (repositories != null) {
+        result.addAll(repositories);
+      }
+      return result;
+    }
+
+    String repositoryRegex() {
+      return repository_regex;
+    }
+
     String accessToken() {
       return access_token;
     }
 
+    String api() {
+      return api == null ? "rest" : api;
+    }
+
+    /** The base URL of the REST API, without trailing slash. */
+    String apiUrl() {
+      if (api_url == null || api_url.isBlank()) {
+        return DEFAULT_API_URL;
+      } else {
+        return api_url.endsWith("/") ? api_url.substring(0, api_url.length() - 1) : api_url;
+      }
+    }
+
+    /**
+     * The URL of the GraphQL API, {@code /graphql} on github.com and {@code /api/graphql} on GitHub
+     * Enterprise Server (where the REST API is under {@code /api/v3}).
+     */
+    String graphQlUrl() {
+      String apiUrl = apiUrl();
+      if (apiUrl.endsWith("/api/v3")) {
+        return apiUrl.substring(0, apiUrl.length() - "/v3".length()) + "/graphql";
+      } else {
+        return apiUrl + "/graphql";
+      }
+    }
+
+    String cacheDirectory() {
+      return cache_directory;
+    }
+
+    long cacheMaxSize() {
+      return cache_max_size <= 0 ? DEFAULT_CACHE_MAX_SIZE : cache_max_size;
+    }
+
+    Duration requestTimeout() {
+      return request_timeout == null
+          ? RequestScheduler.DEFAULT_REQUEST_TIMEOUT
+          : Duration.parse(request_timeout);
+    }
+
+    /** The latency percentile that triggers hedged page requests, 0 if disabled. */
+    int hedgePercentile() {
+      return Math.max(0, Math.min(hedge_percentile, 100));
+    }
+
+    /** How long the deletion plan of an interrupted run can be resumed. */
+    Duration journalMaxAge() {
+      return journal_max_age == null
+          ? DeletionJournal.DEFAULT_MAX_AGE
+          : Duration.parse(journal_max_age);
+    }
+
+    /** The releases {@code check} reports versions for, all the releases if null. */
+    String tagFilter() {
+      return tag_filter;
+    }
+
     @Override
     public String toString() {
       return "Source{"
@@ -410,9 +4961,36 @@ public class GithubReleaseDeleteResource {
           + ", repository='"
           + repository
           + '\''
+          + ", repositories="
+          + repositories
+          + ", repository_regex='"
+          + repository_regex
+          + '\''
           + ", access_token='"
           + access_token
           + '\''
+          + ", api='"
+          + api
+          + '\''
+          + ", api_url='"
+          + api_url
+          + '\''
+          + ", cache_directory='"
+          + cache_directory
+          + '\''
+          + ", cache_max_size="
+          + cache_max_size
+          + ", request_timeout='"
+          + request_timeout
+          + '\''
+          + ", hedge_percentile="
+          + hedge_percentile
+          + ", journal_max_age='"
+          + journal_max_age
+          + '\''
+          + ", tag_filter='"
+          + tag_filter
+          + '\''
           + '}';
     }
   }
@@ -0,0 +1,441 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * In-process fake of the GitHub REST API for a single repository.
+ *
+ * <p>It serves paginated releases with {@code link} headers and accepts deletions of releases and
+ * tags. Latency, rate limit headers and server errors can be injected.
+ */
+class FakeGithubServer implements AutoCloseable {
+
+  static {
+    // headers and body are written separately, Nagle's algorithm would delay every response
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  static final ZonedDateTime FIRST_PUBLICATION = ZonedDateTime.parse("2021-01-01T00:00:00Z");
+
+  private final String owner;
+  private final String repository;
+  private final HttpServer server;
+  // newest (highest ID) first, like the GitHub API
+  private final NavigableMap<Long, FakeRelease> releases =
+      new ConcurrentSkipListMap<Long, FakeRelease>().descendingMap();
+  private final Set<String> tags = ConcurrentHashMap.newKeySet();
+  private final Map<String, AtomicInteger> requests = new ConcurrentHashMap<>();
+  private final AtomicInteger notModified = new AtomicInteger();
+  private final AtomicLong nextId = new AtomicLong(1);
+  private final AtomicLong rateLimitRemaining = new AtomicLong(-1);
+  private volatile Instant rateLimitReset = Instant.now().plusSeconds(3600);
+  private volatile Duration latency = Duration.ZERO;
+  private volatile double errorRate = 0.0;
+  private final Map<String, AtomicInteger> pendingFailures = new ConcurrentHashMap<>();
+  private final Map<Integer, Duration> slowPages = new ConcurrentHashMap<>();
+  private final Map<Integer, Duration> stalledPages = new ConcurrentHashMap<>();
+  private volatile boolean gzip = true;
+
+  FakeGithubServer(String owner, String repository) throws IOException {
+    this.owner = owner;
+    this.repository = repository;
+    this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    this.server.createContext("/", this::handle);
+  }
+
+  FakeGithubServer start() {
+    server.start();
+    return this;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+  }
+
+  String apiUrl() {
+    return "http://localhost:" + server.getAddress().getPort();
+  }
+
+  /** Adds releases, each one published one minute after the previous one. */
+  FakeGithubServer addReleases(String tagPrefix, int count) {
+    for (int i = 0; i < count; i++) {
+      long id = nextId.getAndIncrement();
+      String tag = tagPrefix + id;
+      releases.put(id, new FakeRelease(id, tag, FIRST_PUBLICATION.plusMinutes(id), false));
+      tags.add(tag);
+    }
+    return this;
+  }
+
+  /** Adds a draft release, which is listed but cannot be found by its tag. */
+  FakeGithubServer addDraft(String tag) {
+    long id = nextId.getAndIncrement();
+    releases.put(id, new FakeRelease(id, tag, FIRST_PUBLICATION.plusMinutes(id), true));
+    tags.add(tag);
+    return this;
+  }
+
+  /** Adds tags without release. */
+  FakeGithubServer addTags(String... tags) {
+    this.tags.addAll(List.of(tags));
+    return this;
+  }
+
+  FakeGithubServer latency(Duration latency) {
+    this.latency = latency;
+    return this;
+  }
+
+  /** The ratio of requests answered with a 502 response, between 0 and 1. */
+  FakeGithubServer errorRate(double errorRate) {
+    this.errorRate = errorRate;
+    return this;
+  }
+
+  /** Answers the next requests for an endpoint, e.g. {@code GET /releases}, with a 502 response. */
+  FakeGithubServer failNext(String endpoint, int count) {
+    pendingFailures.computeIfAbsent(endpoint, e -> new AtomicInteger()).addAndGet(count);
+    return this;
+  }
+
+  /** Delays the first request for a page of releases. */
+  FakeGithubServer slowPage(int page, Duration delay) {
+    slowPages.put(page, delay);
+    return this;
+  }
+
+  /** Stops in the middle of the body of the first response for a page of releases. */
+  FakeGithubServer stallPage(int page, Duration stall) {
+    stalledPages.put(page, stall);
+    return this;
+  }
+
+  /** Whether responses are compressed when the request accepts gzip, like GitHub does. */
+  FakeGithubServer gzip(boolean gzip) {
+    this.gzip = gzip;
+    return this;
+  }
+
+  /** Sends rate limit headers, the remaining budget decreasing with each request. */
+  FakeGithubServer rateLimit(long remaining, Instant reset) {
+    this.rateLimitRemaining.set(remaining);
+    this.rateLimitReset = reset;
+    return this;
+  }
+
+  List<FakeRelease> releases() {
+    return new ArrayList<>(releases.values());
+  }
+
+  Set<String> tags() {
+    return new TreeSet<>(tags);
+  }
+
+  /** The number of pages of releases answered with a 304 response. */
+  int notModified() {
+    return notModified.get();
+  }
+
+  /** The number of requests for an endpoint, e.g. {@code GET /releases}. */
+  int requests(String endpoint) {
+    AtomicInteger count = requests.get(endpoint);
+    return count == null ? 0 : count.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try (exchange) {
+      if (!latency.isZero()) {
+        Thread.sleep(latency);
+      }
+      String prefix = "/repos/" + owner + "/" + repository;
+      String path = exchange.getRequestURI().getRawPath();
+      String method = exchange.getRequestMethod();
+      if (!path.startsWith(prefix)) {
+        count(method + " " + path);
+        send(exchange, 404, null);
+        return;
+      }
+      path = path.substring(prefix.length());
+      rateLimitHeaders(exchange);
+      AtomicInteger failures = pendingFailures.get(method + " " + endpoint(path));
+      if ((failures != null && failures.getAndUpdate(f -> Math.max(0, f - 1)) > 0)
+          || (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate)) {
+        count(method + " " + endpoint(path));
+        send(exchange, 502, null);
+        return;
+      }
+      count(method + " " + endpoint(path));
+      if ("GET".equals(method) && "/releases".equals(path)) {
+        listReleases(exchange);
+      } else if ("GET".equals(method) && path.startsWith("/releases/tags/")) {
+        String tag = decode(path.substring("/releases/tags/".length()));
+        FakeRelease release =
+            releases.values().stream()
+                .filter(r -> r.tag().equals(tag) && !r.draft())
+                .findFirst()
+                .orElse(null);
+        if (release == null) {
+          send(exchange, 404, null);
+        } else {
+          exchange.getResponseHeaders().set("content-type", "application/json; charset=utf-8");
+          String json = releasesJson(List.of(release));
+          // single object, not an array
+          send(
+              exchange, 200, json.substring(1, json.length() - 1).getBytes(StandardCharsets.UTF_8));
+        }
+      } else if ("GET".equals(method) && path.startsWith("/git/matching-refs/tags/")) {
+        listTags(exchange, decode(path.substring("/git/matching-refs/tags/".length())));
+      } else if ("DELETE".equals(method) && path.startsWith("/releases/")) {
+        long id = Long.parseLong(path.substring("/releases/".length()));
+        send(exchange, releases.remove(id) == null ? 404 : 204, null);
+      } else if ("DELETE".equals(method) && path.startsWith("/git/refs/tags/")) {
+        String tag = decode(path.substring("/git/refs/tags/".length()));
+        send(exchange, tags.remove(tag) ? 204 : 422, null);
+      } else {
+        send(exchange, 404, null);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void listReleases(HttpExchange exchange) throws IOException {
+    Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+    int perPage = Integer.parseInt(query.getOrDefault("per_page", "30"));
+    int page = Integer.parseInt(query.getOrDefault("page", "1"));
+    Duration delay = slowPages.remove(page);
+    if (delay != null) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+    List<FakeRelease> all = releases();
+    int lastPage = Math.max(1, (all.size() + perPage - 1) / perPage);
+    List<FakeRelease> pageReleases =
+        all.subList(
+            Math.min(all.size(), (page - 1) * perPage), Math.min(all.size(), page * perPage));
+    List<String> links = new ArrayList<>();
+    String url = apiUrl() + "/repos/" + owner + "/" + repository + "/releases?per_page=" + perPage;
+    if (page < lastPage) {
+      links.add("<" + url + "&page=" + (page + 1) + ">; rel=\"next\"");
+      links.add("<" + url + "&page=" + lastPage + ">; rel=\"last\"");
+    }
+    if (page > 1) {
+      links.add("<" + url + "&page=" + (page - 1) + ">; rel=\"prev\"");
+      links.add("<" + url + "&page=1>; rel=\"first\"");
+    }
+    if (!links.isEmpty()) {
+      exchange.getResponseHeaders().set("link", String.join(", ", links));
+    }
+    String json = releasesJson(pageReleases);
+    // the ETag changes with the page and its links, like on GitHub
+    String etag = "W/\"" + Integer.toHexString((json + links).hashCode()) + "\"";
+    exchange.getResponseHeaders().set("etag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("if-none-match"))) {
+      notModified.incrementAndGet();
+      send(exchange, 304, null);
+      return;
+    }
+    exchange.getResponseHeaders().set("content-type", "application/json; charset=utf-8");
+    send(exchange, 200, json.getBytes(StandardCharsets.UTF_8), stalledPages.remove(page));
+  }
+
+  private void listTags(HttpExchange exchange, String prefix) throws IOException {
+    String repositoryUrl = apiUrl() + "/repos/" + owner + "/" + repository;
+    StringWriter buffer = new StringWriter();
+    JsonWriter json = new JsonWriter(buffer);
+    json.beginArray();
+    for (String tag : tags()) {
+      if (tag.startsWith(prefix)) {
+        json.beginObject();
+        json.name("ref").value("refs/tags/" + tag);
+        json.name("node_id").value("MDM6UmVm" + tag);
+        json.name("url").value(repositoryUrl + "/git/refs/tags/" + tag);
+        json.name("object").beginObject();
+        json.name("sha").value("aa218f56b14c9653891f9e74264a383fa43fefbd");
+        json.name("type").value("commit");
+        json.name("url")
+            .value(repositoryUrl + "/git/commits/aa218f56b14c9653891f9e74264a383fa43fefbd");
+        json.endObject();
+        json.endObject();
+      }
+    }
+    json.endArray();
+    json.flush();
+    exchange.getResponseHeaders().set("content-type", "application/json; charset=utf-8");
+    send(exchange, 200, buffer.toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private String releasesJson(List<FakeRelease> pageReleases) throws IOException {
+    String repositoryUrl = apiUrl() + "/repos/" + owner + "/" + repository;
+    StringWriter buffer = new StringWriter();
+    JsonWriter json = new JsonWriter(buffer);
+    json.beginArray();
+    for (FakeRelease release : pageReleases) {
+      json.beginObject();
+      json.name("url").value(repositoryUrl + "/releases/" + release.id());
+      json.name("assets_url").value(repositoryUrl + "/releases/" + release.id() + "/assets");
+      json.name("id").value(release.id());
+      json.name("author");
+      user(json);
+      json.name("node_id").value("MDc6UmVsZWFzZT" + release.id());
+      json.name("tag_name").value(release.tag());
+      json.name("target_commitish").value("main");
+      json.name("name").value(release.tag());
+      json.name("draft").value(release.draft());
+      json.name("prerelease").value(true);
+      json.name("created_at").value(release.publishedAt().toString());
+      if (release.draft()) {
+        json.name("published_at").nullValue();
+      } else {
+        json.name("published_at").value(release.publishedAt().toString());
+      }
+      json.name("assets").beginArray().beginObject();
+      json.name("url").value(repositoryUrl + "/releases/assets/" + release.id());
+      json.name("id").value(release.id());
+      json.name("name").value("package-" + release.tag() + ".tar.xz");
+      json.name("uploader");
+      user(json);
+      json.name("content_type").value("application/octet-stream");
+      json.name("size").value(21);
+      json.endObject().endArray();
+      json.name("body").value("");
+      json.endObject();
+    }
+    json.endArray();
+    json.flush();
+    return buffer.toString();
+  }
+
+  private static void user(JsonWriter json) throws IOException {
+    json.beginObject();
+    json.name("login").value("rabbitmq-ci");
+    json.name("id").value(71012429);
+    json.name("avatar_url").value("https://avatars.githubusercontent.com/u/71012429?v=4");
+    json.name("url").value("https://api.github.com/users/rabbitmq-ci");
+    json.name("html_url").value("https://github.com/rabbitmq-ci");
+    json.name("type").value("User");
+    json.name("site_admin").value(false);
+    json.endObject();
+  }
+
+  private void rateLimitHeaders(HttpExchange exchange) {
+    long remaining = rateLimitRemaining.getAndUpdate(r -> r > 0 ? r - 1 : r);
+    if (remaining >= 0) {
+      exchange
+          .getResponseHeaders()
+          .set("X-RateLimit-Remaining", String.valueOf(Math.max(0, remaining - 1)));
+      exchange
+          .getResponseHeaders()
+          .set("X-RateLimit-Reset", String.valueOf(rateLimitReset.getEpochSecond()));
+    }
+  }
+
+  private void count(String endpoint) {
+    requests.computeIfAbsent(endpoint, e -> new AtomicInteger()).incrementAndGet();
+  }
+
+  private static String endpoint(String path) {
+    if (path.startsWith("/releases/tags/")) {
+      return "/releases/tags/{tag}";
+    } else if (path.startsWith("/releases/")) {
+      return "/releases/{id}";
+    } else if (path.startsWith("/git/refs/tags/")) {
+      return "/git/refs/tags/{tag}";
+    } else if (path.startsWith("/git/matching-refs/tags/")) {
+      return "/git/matching-refs/tags/{prefix}";
+    } else {
+      return path;
+    }
+  }
+
+  private static Map<String, String> query(String query) {
+    Map<String, String> parameters = new HashMap<>();
+    if (query != null) {
+      for (String parameter : query.split("&")) {
+        String[] keyValue = parameter.split("=", 2);
+        parameters.put(decode(keyValue[0]), keyValue.length > 1 ? decode(keyValue[1]) : "");
+      }
+    }
+    return parameters;
+  }
+
+  private static String decode(String value) {
+    return URLDecoder.decode(value, StandardCharsets.UTF_8);
+  }
+
+  private void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    send(exchange, status, body, null);
+  }
+
+  private void send(HttpExchange exchange, int status, byte[] body, Duration stall)
+      throws IOException {
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+    } else {
+      String acceptEncoding = exchange.getRequestHeaders().getFirst("accept-encoding");
+      if (gzip && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+          out.write(body);
+        }
+        body = compressed.toByteArray();
+        exchange.getResponseHeaders().set("content-encoding", "gzip");
+      }
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        if (stall == null) {
+          out.write(body);
+        } else {
+          out.write(body, 0, body.length / 2);
+          out.flush();
+          try {
+            Thread.sleep(stall);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+          }
+          out.write(body, body.length / 2, body.length - body.length / 2);
+        }
+      }
+    }
+  }
+
+  record FakeRelease(long id, String tag, ZonedDateTime publishedAt, boolean draft) {}
+}
@@ -0,0 +1,180 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.GithubGraphQlReleaseAccess;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Input;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Release;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RequestScheduler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class GithubGraphQlReleaseAccessTest {
+
+  static final String INPUT =
+      "{ \"source\": { \"owner\": \"rabbitmq\", \"repository\": \"rabbitmq-server\","
+          + " \"access_token\": \"42\", \"api\": \"graphql\" },"
+          + " \"params\": { \"tag_filter\": \".*\", \"keep_last_n\": 0 } }";
+
+  HttpServer server;
+  AtomicInteger queries = new AtomicInteger();
+  AtomicInteger mutations = new AtomicInteger();
+  AtomicInteger deletedRefs = new AtomicInteger();
+  AtomicInteger failNext = new AtomicInteger();
+  GithubGraphQlReleaseAccess access;
+
+  @BeforeEach
+  void init() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/graphql", this::handle);
+    server.start();
+    Input input = GithubReleaseDeleteResource.GSON.fromJson(INPUT, Input.class);
+    access =
+        new GithubGraphQlReleaseAccess(
+            input.source(),
+            input.source().repository(),
+            new RequestScheduler(HttpClient.newHttpClient(), 4),
+            URI.create("http://localhost:" + server.getAddress().getPort() + "/graphql"));
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void listPagesThroughReleases() {
+    List<Release> releases = access.list();
+
+    assertThat(releases).hasSize(150);
+    assertThat(queries).hasValue(2);
+    assertThat(releases.get(0).tag()).isEqualTo("v1");
+    assertThat(releases.get(0).url())
+        .isEqualTo("https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/1");
+    assertThat(releases.get(149).id()).isEqualTo(150);
+    assertThat(releases.get(149).publication()).isNotNull();
+    assertThat(releases.get(149).prerelease()).isTrue();
+  }
+
+  @Test
+  void deleteTagsSendsOneRequestPerBatch() {
+    List<Release> releases = access.list();
+
+    Map<Release, Exception> failures = access.deleteTags(releases.subList(0, 50));
+
+    assertThat(mutations).hasValue(1);
+    assertThat(deletedRefs).hasValue(50);
+    assertThat(failures).hasSize(1);
+    assertThat(failures.keySet().iterator().next().id()).isEqualTo(3);
+  }
+
+  @Test
+  void queriesAreRetriedMutationsAreNot() {
+    failNext.set(1);
+    List<Release> releases = access.list();
+
+    assertThat(releases).hasSize(150);
+    assertThat(queries).hasValue(3);
+
+    failNext.set(1);
+    assertThatThrownBy(() -> access.deleteTags(releases.subList(0, 10)))
+        .hasMessageContaining("502");
+    assertThat(mutations).hasValue(1);
+    assertThat(deletedRefs).hasValue(0);
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    JsonObject request =
+        JsonParser.parseReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))
+            .getAsJsonObject();
+    String query = request.get("query").getAsString();
+    JsonObject variables = request.getAsJsonObject("variables");
+    if (failNext.getAndUpdate(f -> Math.max(0, f - 1)) > 0) {
+      (query.startsWith("query") ? queries : mutations).incrementAndGet();
+      exchange.sendResponseHeaders(502, -1);
+      exchange.close();
+      return;
+    }
+    JsonObject data = new JsonObject();
+    JsonObject response = new JsonObject();
+    if (query.startsWith("query")) {
+      queries.incrementAndGet();
+      boolean firstPage = !variables.has("cursor") || variables.get("cursor").isJsonNull();
+      int from = firstPage ? 1 : 101;
+      int to = firstPage ? 100 : 150;
+      JsonArray nodes = new JsonArray();
+      for (int i = from; i <= to; i++) {
+        JsonObject node = new JsonObject();
+        node.addProperty("databaseId", i);
+        node.addProperty("tagName", "v" + i);
+        node.addProperty("publishedAt", "2021-03-01T10:37:58Z");
+        node.addProperty("isDraft", false);
+        node.addProperty("isPrerelease", i % 2 == 0);
+        JsonObject tag = new JsonObject();
+        tag.addProperty("id", "ref" + i);
+        node.add("tag", tag);
+        nodes.add(node);
+      }
+      JsonObject pageInfo = new JsonObject();
+      pageInfo.addProperty("hasNextPage", firstPage);
+      pageInfo.addProperty("endCursor", firstPage ? "c1" : "c2");
+      JsonObject releases = new JsonObject();
+      releases.add("pageInfo", pageInfo);
+      releases.add("nodes", nodes);
+      JsonObject repository = new JsonObject();
+      repository.add("releases", releases);
+      data.add("repository", repository);
+    } else {
+      mutations.incrementAndGet();
+      JsonArray errors = new JsonArray();
+      for (Map.Entry<String, JsonElement> variable : variables.entrySet()) {
+        deletedRefs.incrementAndGet();
+        String alias = "d" + variable.getKey().substring(1);
+        if ("ref3".equals(variable.getValue().getAsString())) {
+          data.add(alias, null);
+          JsonObject error = new JsonObject();
+          error.addProperty("message", "Reference does not exist");
+          JsonArray path = new JsonArray();
+          path.add(alias);
+          error.add("path", path);
+          errors.add(error);
+        } else {
+          data.add(alias, new JsonObject());
+        }
+      }
+      if (!errors.isEmpty()) {
+        response.add("errors", errors);
+      }
+    }
+    response.add("data", data);
+    byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+}
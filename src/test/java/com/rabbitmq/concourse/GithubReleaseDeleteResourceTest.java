@@ -5,17 +5,62 @@
  */
 package com.rabbitmq.concourse;
 
-import static com.rabbitmq.concourse.GithubReleaseDeleteResource.filterByTag;
-import static com.rabbitmq.concourse.GithubReleaseDeleteResource.filterForDeletion;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.CachedPage;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.DeletionEngine;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.DeletionPlan;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.DeletionResult;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.GitubRestApiReleaseAccess;
 import com.rabbitmq.concourse.GithubReleaseDeleteResource.Input;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.LogSink;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Metrics;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Page;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.PageCache;
 import com.rabbitmq.concourse.GithubReleaseDeleteResource.Release;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ReleaseAccess;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ReleaseIndex;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RepositorySummary;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RetentionPolicy;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RetentionRules;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Rule;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.StreamingRetention;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.TagSample;
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class GithubReleaseDeleteResourceTest {
 
@@ -52,6 +97,74 @@ public class GithubReleaseDeleteResourceTest {
     assertThat(input.params()).isNotNull();
     assertThat(input.params().tagFilter()).isEqualTo("some regex pattern");
     assertThat(input.params().keepLastN()).isEqualTo(3);
+    assertThat(input.params().parallelism()).isEqualTo(1);
+  }
+
+  @Test
+  void parseInputFromStream() {
+    Input input =
+        GithubReleaseDeleteResource.input(
+            new ByteArrayInputStream(SAMPLE.getBytes(StandardCharsets.UTF_8)));
+    assertThat(input.source().repository()).isEqualTo("rabbitmq-server");
+    assertThat(input.params().tagFilter()).isEqualTo("some regex pattern");
+
+    assertThat(GithubReleaseDeleteResource.input(new ByteArrayInputStream(new byte[0]))).isNull();
+  }
+
+  @Test
+  void logSinkWritesWholeLinesInOrderPerThread() throws Exception {
+    StringWriter writer = new StringWriter();
+    LogSink sink = new LogSink(writer, 16);
+    try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+      for (int t = 0; t < 4; t++) {
+        int thread = t;
+        executor.execute(
+            () -> {
+              for (int i = 0; i < 500; i++) {
+                sink.log("thread " + thread + " line " + i);
+              }
+            });
+      }
+    }
+    sink.flush();
+
+    List<String> lines = writer.toString().lines().toList();
+    assertThat(lines).hasSize(2000).allMatch(l -> l.matches("thread [0-3] line [0-9]+"));
+    for (int t = 0; t < 4; t++) {
+      String prefix = "thread " + t + " line ";
+      assertThat(lines.stream().filter(l -> l.startsWith(prefix)))
+          .containsExactlyElementsOf(IntStream.range(0, 500).mapToObj(i -> prefix + i).toList());
+    }
+  }
+
+  @Test
+  void tagSampleCountsAndKeepsFewTags() {
+    TagSample sample = new TagSample();
+    assertThat(sample.describe("release(s)")).isEqualTo("0 release(s)");
+    sample.add("v1");
+    sample.add("v2");
+    assertThat(sample.describe("release(s)")).isEqualTo("2 release(s), e.g. v1, v2");
+    for (int i = 3; i <= 1000; i++) {
+      sample.add("v" + i);
+    }
+    assertThat(sample.count()).isEqualTo(1000);
+    assertThat(sample.tags())
+        .hasSize(TagSample.SIZE)
+        .doesNotHaveDuplicates()
+        .allMatch(t -> t.matches("v[0-9]+"));
+  }
+
+  /** The releases matching the tag filter: none is kept. */
+  static List<Release> filterByTag(List<Release> releases, String tagRegex) {
+    return new RetentionPolicy(Pattern.compile(tagRegex), 0, 0, null, false, false)
+        .plan(releases, Instant.now())
+        .toDelete();
+  }
+
+  static List<Release> filterForDeletion(List<Release> releases, int keepLastN) {
+    return new RetentionPolicy(null, keepLastN, 0, null, false, false)
+        .plan(releases, Instant.now())
+        .toDelete();
   }
 
   @Test
@@ -112,4 +225,547 @@ public class GithubReleaseDeleteResourceTest {
 
     assertThat(filterForDeletion(releases, releases.size() + 1)).isEmpty();
   }
+
+  @Test
+  void deletionEngineDeletesReleaseBeforeTagAndReportsFailures() {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    ReleaseAccess access =
+        new ReleaseAccess() {
+          @Override
+          public List<Release> list() {
+            return Collections.emptyList();
+          }
+
+          @Override
+          public void delete(Release release) {
+            if (release.id() == 3) {
+              throw new IllegalStateException("boom");
+            }
+            calls.add("release-" + release.id());
+          }
+
+          @Override
+          public void deleteTag(String tag) {
+            calls.add("tag-" + tag);
+          }
+
+          @Override
+          public List<String> listTags(String prefix) {
+            return Collections.emptyList();
+          }
+        };
+    List<Release> releases =
+        LongStream.rangeClosed(1, 20).mapToObj(id -> rTag(id, "v" + id)).collect(toList());
+
+    List<DeletionResult> results = new DeletionEngine(access, 4).delete(releases);
+
+    assertThat(results).hasSize(20);
+    assertThat(results.stream().map(r -> r.release().id()))
+        .containsExactlyElementsOf(releases.stream().map(Release::id).collect(toList()));
+    assertThat(results.stream().filter(r -> !r.succeeded()).map(r -> r.release().id()))
+        .containsExactly(3L);
+    assertThat(calls).hasSize(38).doesNotContain("release-3", "tag-v3");
+    releases.stream()
+        .filter(r -> r.id() != 3)
+        .forEach(
+            r ->
+                assertThat(calls.indexOf("release-" + r.id()))
+                    .isLessThan(calls.indexOf("tag-" + r.tag())));
+  }
+
+  @Test
+  void deletionEngineDeletesTagsInBatchesAfterReleases() {
+    List<String> calls = new CopyOnWriteArrayList<>();
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    ReleaseAccess access =
+        new ReleaseAccess() {
+          @Override
+          public List<Release> list() {
+            return Collections.emptyList();
+          }
+
+          @Override
+          public void delete(Release release) {
+            calls.add("release-" + release.id());
+          }
+
+          @Override
+          public void deleteTag(String tag) {
+            throw new UnsupportedOperationException();
+          }
+
+          @Override
+          public List<String> listTags(String prefix) {
+            return Collections.emptyList();
+          }
+
+          @Override
+          public Map<Release, Exception> deleteTags(List<Release> releases) {
+            batchSizes.add(releases.size());
+            releases.forEach(r -> calls.add("tag-" + r.id()));
+            return releases.stream()
+                .filter(r -> r.id() == 5)
+                .collect(Collectors.toMap(r -> r, r -> new IllegalStateException("boom")));
+          }
+
+          @Override
+          public int tagDeletionBatchSize() {
+            return 3;
+          }
+        };
+    List<Release> releases =
+        LongStream.rangeClosed(1, 7).mapToObj(id -> rTag(id, "v" + id)).collect(toList());
+
+    List<DeletionResult> results = new DeletionEngine(access, 2).delete(releases);
+
+    assertThat(batchSizes).containsExactlyInAnyOrder(3, 3, 1);
+    assertThat(calls.subList(0, 7)).allMatch(c -> c.startsWith("release-"));
+    assertThat(results.stream().filter(r -> !r.succeeded()).map(r -> r.release().id()))
+        .containsExactly(5L);
+  }
+
+  @Test
+  void linksTest() {
+    String header =
+        "<https://api.github.com/repositories/343344332/releases?per_page=100&page=2>; rel=\"next\", "
+            + "<https://api.github.com/repositories/343344332/releases?per_page=100&page=50>; rel=\"last\"";
+    Map<String, String> links = GitubRestApiReleaseAccess.links(header);
+    assertThat(links)
+        .containsEntry(
+            "next", "https://api.github.com/repositories/343344332/releases?per_page=100&page=2")
+        .containsEntry(
+            "last", "https://api.github.com/repositories/343344332/releases?per_page=100&page=50")
+        .hasSize(2);
+
+    String last = links.get("last");
+    assertThat(GitubRestApiReleaseAccess.pageNumber(last)).isEqualTo(50);
+    assertThat(GitubRestApiReleaseAccess.pageUrl(last, 7))
+        .isEqualTo("https://api.github.com/repositories/343344332/releases?per_page=100&page=7");
+
+    assertThat(
+            GitubRestApiReleaseAccess.links(
+                "<https://api.github.com/repositories/343344332/releases?page=1>; rel=\"prev first\""))
+        .containsOnlyKeys("prev", "first");
+  }
+
+  @Test
+  void pageCacheStoresAndEvictsPages(@TempDir Path directory) throws Exception {
+    PageCache cache = new PageCache(directory, 1024);
+    List<Release> releases =
+        Arrays.asList(
+            new Release(
+                1,
+                "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/1",
+                "v1",
+                ZonedDateTime.parse("2021-03-01T10:37:58Z", DateTimeFormatter.ISO_ZONED_DATE_TIME)),
+            new Release(
+                2, "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/2", "v2", null),
+            new Release(
+                3, "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/3", null, null));
+    Map<String, String> links = Map.of("next", "https://api.github.com/releases?page=2");
+    cache.put(
+        "https://api.github.com/releases?page=1",
+        new CachedPage("\"abc\"", null, new Page(releases, links)));
+
+    CachedPage cached = cache.get("https://api.github.com/releases?page=1");
+    assertThat(cached).isNotNull();
+    assertThat(cached.etag()).isEqualTo("\"abc\"");
+    assertThat(cached.lastModified()).isNull();
+    assertThat(cached.page().links()).isEqualTo(links);
+    List<Release> cachedReleases = cached.page().releases().toList();
+    assertThat(cachedReleases).hasSize(3);
+    assertThat(cachedReleases.get(0).tag()).isEqualTo("v1");
+    assertThat(cachedReleases.get(0).url()).isEqualTo(releases.get(0).url());
+    assertThat(cachedReleases.get(0).publication()).isEqualTo(releases.get(0).publication());
+    assertThat(cachedReleases.get(1).publication()).isNull();
+    // no tag, not an empty tag
+    assertThat(cachedReleases.get(2).tag()).isNull();
+    assertThat(cached.page().releases().tag(2)).isNull();
+    assertThat(cache.get("https://api.github.com/releases?page=2")).isNull();
+
+    // the page is ~200 bytes, so the cache can hold only a few pages
+    for (int i = 2; i <= 20; i++) {
+      cache.put(
+          "https://api.github.com/releases?page=" + i,
+          new CachedPage("\"abc\"", null, new Page(releases, links)));
+    }
+    cache.evict();
+    try (Stream<Path> files = Files.list(directory)) {
+      assertThat(files.mapToLong(f -> f.toFile().length()).sum()).isLessThanOrEqualTo(1024);
+    }
+  }
+
+  @Test
+  void parseInputWithSeveralRepositories() {
+    String json =
+        "{ \"source\": { \"owner\": \"rabbitmq\", \"repository\": \"rabbitmq-server\","
+            + " \"repositories\": [\"rabbitmq-java-tools-binaries-dev\", \"rabbitmq-server\"],"
+            + " \"repository_regex\": \".*-binaries-dev\", \"access_token\": \"42\" },"
+            + " \"params\": { \"tag_filter\": \".*\", \"keep_last_n\": 2 } }";
+    Input input = GithubReleaseDeleteResource.GSON.fromJson(json, Input.class);
+    assertThat(input.source().repositories())
+        .containsExactly("rabbitmq-server", "rabbitmq-java-tools-binaries-dev", "rabbitmq-server");
+    assertThat(input.source().repositoryRegex()).isEqualTo(".*-binaries-dev");
+
+    Input single = GithubReleaseDeleteResource.GSON.fromJson(SAMPLE, Input.class);
+    assertThat(single.source().repositories()).containsExactly("rabbitmq-server");
+    assertThat(single.source().repositoryRegex()).isNull();
+  }
+
+  @Test
+  void filterRepositoriesTest() {
+    assertThat(
+            GithubReleaseDeleteResource.filterRepositories(
+                Arrays.asList(
+                    "rabbitmq-server",
+                    "rabbitmq-server-binaries-dev",
+                    "rabbitmq-java-tools-binaries-dev",
+                    "rabbitmq-website"),
+                ".*-binaries-dev"))
+        .containsExactly("rabbitmq-server-binaries-dev", "rabbitmq-java-tools-binaries-dev");
+  }
+
+  @Test
+  void retentionPolicyCombinesPolicies() {
+    List<Release> releases =
+        Arrays.asList(
+            release(1, "v3.8.1", "2021-01-01", false, false),
+            release(2, "v3.8.2", "2021-01-02", false, false),
+            release(3, "v3.8.3", "2021-01-03", false, false),
+            release(4, "v3.9.0", "2021-01-04", false, false),
+            release(5, "v3.9.1", "2021-01-05", false, true),
+            release(6, "v3.9.2", "2021-01-06", false, false),
+            release(7, "v3.10.0", "2021-01-07", false, false),
+            release(8, "v3.10.1", null, true, false),
+            release(9, "other-tag", "2021-01-01", false, false));
+    Pattern tagFilter = Pattern.compile("^v.*$");
+    Instant now = Instant.parse("2021-01-07T12:00:00Z");
+
+    DeletionPlan plan =
+        new RetentionPolicy(tagFilter, 2, 0, null, false, false).plan(releases, now);
+    // the unpublished release is considered the newest
+    assertThat(plan.toDelete().stream().map(Release::id)).containsExactly(1L, 2L, 3L, 4L, 5L, 6L);
+    assertThat(plan.kept().stream().map(Release::id)).containsExactlyInAnyOrder(7L, 8L);
+
+    plan = new RetentionPolicy(tagFilter, 1, 1, null, true, true).plan(releases, now);
+    assertThat(plan.toDelete().stream().map(Release::id)).containsExactly(1L, 2L, 4L);
+    assertThat(plan.kept().stream().map(Release::id)).containsExactlyInAnyOrder(3L, 5L, 6L, 7L, 8L);
+
+    plan =
+        new RetentionPolicy(tagFilter, 0, 0, Duration.ofDays(3), false, false).plan(releases, now);
+    assertThat(plan.toDelete().stream().map(Release::id)).containsExactly(1L, 2L, 3L, 4L);
+
+    plan = new RetentionPolicy(tagFilter, 0, 0, null, false, false).plan(releases, now);
+    assertThat(plan.toDelete()).hasSize(8);
+    assertThat(plan.kept()).isEmpty();
+  }
+
+  @Test
+  void orphanedTagsTest() throws Exception {
+    List<Release> releases = Arrays.asList(rTag(1, "v3.9.0-alpha.1"), rTag(2, "v3.9.0-alpha.2"));
+    List<String> tags =
+        Arrays.asList("v3.9.0-alpha.1", "v3.9.0-alpha.2", "v3.9.0-alpha.3", "v3.8.0", "nightly");
+    RetentionRules rules =
+        new RetentionRules(
+            List.of(
+                new RetentionPolicy(
+                    Pattern.compile("^v3.9.0-alpha.[0-9]+$"), 0, 0, null, false, false)));
+
+    assertThat(GithubReleaseDeleteResource.orphanedTags(tags, ReleaseIndex.of(releases), rules))
+        .containsExactly("v3.9.0-alpha.3");
+
+    String json =
+        "[{\"ref\":\"refs/tags/v1.0.0\",\"node_id\":\"MDM6UmVm\",\"object\":{\"sha\":\"aa218f56\","
+            + "\"type\":\"commit\"}},{\"ref\":\"refs/tags/v1.0.1\",\"object\":{\"type\":\"tag\"}}]";
+    List<String> parsed = new ArrayList<>();
+    GithubReleaseDeleteResource.parseTagNames(
+        new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), parsed::add);
+    assertThat(parsed).containsExactly("v1.0.0", "v1.0.1");
+  }
+
+  @Test
+  void literalPrefixTest() {
+    assertThat(RetentionPolicy.literalPrefix("^v-stream-perf-test-0\\.1\\.0-SNAPSHOT-[0-9]+$"))
+        .isEqualTo("v-stream-perf-test-0.1.0-SNAPSHOT-");
+    assertThat(RetentionPolicy.literalPrefix("^v3.9.0-alpha.[0-9]+$")).isEqualTo("v3");
+    assertThat(RetentionPolicy.literalPrefix("v3\\.9\\.0-alpha")).isEqualTo("v3.9.0-alpha");
+    assertThat(RetentionPolicy.literalPrefix("^v3\\.9\\.0-alpha-stream\\.[0-9]+$"))
+        .isEqualTo("v3.9.0-alpha-stream.");
+    assertThat(RetentionPolicy.literalPrefix("^rabbitmq_v3_9_0?")).isEqualTo("rabbitmq_v3_9_");
+    assertThat(RetentionPolicy.literalPrefix("^nightly+")).isEqualTo("nightly");
+    assertThat(RetentionPolicy.literalPrefix("^v\\d+")).isEqualTo("v");
+    assertThat(RetentionPolicy.literalPrefix("^v(3|4)\\..*")).isEmpty();
+    assertThat(RetentionPolicy.literalPrefix("(?i)^v3.*")).isEmpty();
+    assertThat(RetentionPolicy.literalPrefix(".*")).isEmpty();
+    assertThat(RetentionPolicy.literalPrefix("^v 3.*")).isEqualTo("v");
+  }
+
+  @Test
+  void retentionRulesAreEvaluatedIndependently() {
+    Input input =
+        GithubReleaseDeleteResource.GSON.fromJson(
+            "{ \"source\": { \"owner\": \"rabbitmq\", \"repository\": \"rabbitmq-server\" },"
+                + " \"params\": { \"rules\": ["
+                + " { \"tag_filter\": \"^v-stream-a-[0-9]+$\", \"keep_last_n\": 2 },"
+                + " { \"tag_filter\": \"^v-stream-b-[0-9]+$\", \"keep_last_n\": 1 },"
+                + " { \"tag_filter\": \"^v-stream-.-1$\", \"keep_last_n\": 1 } ] } }",
+            Input.class);
+    assertThat(input.params().rules().stream().map(Rule::keepLastN)).containsExactly(2, 1, 1);
+    RetentionRules rules = RetentionRules.of(input.params());
+    assertThat(rules.tagPrefix()).isEqualTo("v-stream-");
+    List<Release> releases =
+        Arrays.asList(
+            release(1, "v-stream-a-1", "2021-01-01", false, false),
+            release(2, "v-stream-b-1", "2021-01-02", false, false),
+            release(3, "v-stream-a-2", "2021-01-03", false, false),
+            release(4, "v-stream-b-2", "2021-01-04", false, false),
+            release(5, "v-stream-a-3", "2021-01-05", false, false),
+            release(6, "v-stream-b-3", "2021-01-06", false, false),
+            release(7, "v-stream-a-4", "2021-01-07", false, false),
+            release(8, "other-1", "2021-01-08", false, false));
+
+    DeletionPlan plan = rules.plan(releases, Instant.parse("2021-01-08T12:00:00Z"));
+
+    // v-stream-b-1 is the newest release of the last rule, so it is kept
+    assertThat(plan.toDelete().stream().map(Release::id)).containsExactly(1L, 3L, 4L);
+    assertThat(plan.kept().stream().map(Release::id)).containsExactlyInAnyOrder(2L, 5L, 6L, 7L);
+    assertThat(rules.matches("v-stream-b-12")).isTrue();
+    assertThat(rules.matches("other-1")).isFalse();
+  }
+
+  @Test
+  void streamingRetentionMatchesPlan() {
+    Input input =
+        GithubReleaseDeleteResource.GSON.fromJson(
+            "{ \"source\": { \"owner\": \"rabbitmq\", \"repository\": \"rabbitmq-server\" },"
+                + " \"params\": { \"rules\": ["
+                + " { \"tag_filter\": \"^v3\\\\.[0-9]+\\\\.[0-9]+-alpha\\\\.[0-9]+$\", \"keep_last_n\": 20 },"
+                + " { \"tag_filter\": \"^v3\\\\.9\\\\..*$\", \"keep_last_n\": 5 } ],"
+                + " \"keep_last_n_per_minor\": 3, \"max_age\": \"P30D\", \"skip_drafts\": true } }",
+            Input.class);
+    RetentionRules rules = RetentionRules.of(input.params());
+    Random random = new Random(42);
+    List<Release> releases = new ArrayList<>();
+    for (int i = 1; i <= 1000; i++) {
+      releases.add(
+          release(
+              i,
+              "v3." + random.nextInt(12) + "." + random.nextInt(3) + "-alpha." + i,
+              LocalDate.of(2021, 1, 1).plusDays(random.nextInt(400)).toString(),
+              random.nextInt(50) == 0,
+              false));
+    }
+    Collections.shuffle(releases, random);
+    Instant now = Instant.parse("2022-01-15T00:00:00Z");
+    DeletionPlan plan = rules.plan(releases, now);
+
+    StreamingRetention retention = rules.streaming(now);
+    ReleaseIndex index = ReleaseIndex.of(releases);
+    List<Long> deleted = new ArrayList<>();
+    for (int i = 0; i < index.size(); i++) {
+      retention.offer(index, i).forEach(r -> deleted.add(r.id()));
+    }
+    // a kept release listed twice changes nothing
+    Set<Long> keptIds = new HashSet<>();
+    retention.kept().forEach(r -> keptIds.add(r.id()));
+    for (int i = 0; i < index.size(); i++) {
+      if (keptIds.contains(index.id(i))) {
+        assertThat(retention.offer(index, i)).isEmpty();
+      }
+    }
+
+    assertThat(plan.toDelete()).hasSizeGreaterThan(100);
+    assertThat(deleted)
+        .containsExactlyInAnyOrderElementsOf(plan.toDelete().stream().map(Release::id).toList());
+    assertThat(retention.keptCount()).isEqualTo(plan.kept().size());
+    assertThat(retention.kept().stream().map(Release::id))
+        .isSubsetOf(plan.kept().stream().map(Release::id).toList());
+  }
+
+  @Test
+  void releaseIndexStoresReleasesInColumns() {
+    String urlPrefix = "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/";
+    List<Release> releases =
+        Arrays.asList(
+            new Release(
+                3, urlPrefix + "3", "v3", ZonedDateTime.parse("2021-03-03T10:00:00Z"), true, false),
+            new Release(2, "https://example.com/2", "v2", null, false, true),
+            new Release(1, urlPrefix + "1", null, ZonedDateTime.parse("2021-03-01T10:00:00Z")));
+    ReleaseIndex index = ReleaseIndex.of(releases);
+
+    assertThat(index.size()).isEqualTo(3);
+    assertThat(index.toList()).usingRecursiveFieldByFieldElementComparator().isEqualTo(releases);
+    assertThat(index.tag(0).toString()).isEqualTo("v3");
+    assertThat(index.tag(2)).isNull();
+    assertThat(index.tagStartsWith(0, "v")).isTrue();
+    assertThat(index.tagStartsWith(0, "v33")).isFalse();
+    assertThat(index.tagStartsWith(2, "")).isTrue();
+    assertThat(index.publication(1)).isEqualTo(ReleaseIndex.NO_PUBLICATION);
+    assertThat(index.draft(0)).isTrue();
+    assertThat(index.prerelease(1)).isTrue();
+    // newest first, reversed
+    assertThat(index.oldestFirst()).containsExactly(2, 0, 1);
+
+    ReleaseIndex concatenated =
+        new ReleaseIndex.Builder().addAll(index).addAll(ReleaseIndex.of(releases)).build();
+    assertThat(concatenated.size()).isEqualTo(6);
+    assertThat(concatenated.url(4)).isEqualTo("https://example.com/2");
+    assertThat(concatenated.tagString(3)).isEqualTo("v3");
+  }
+
+  @Test
+  void releaseIndexSortsOldestFirst() {
+    Random random = new Random(42);
+    ReleaseIndex.Builder builder = new ReleaseIndex.Builder();
+    List<Release> releases = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      // few distinct dates, to have ties broken by id
+      long publication = random.nextInt(10) == 0 ? ReleaseIndex.NO_PUBLICATION : random.nextInt(50);
+      builder.add(i, null, "v" + i, publication, false, false);
+      releases.add(
+          new Release(
+              i,
+              publication == ReleaseIndex.NO_PUBLICATION
+                  ? null
+                  : ZonedDateTime.parse("2021-01-01T00:00:00Z").plusSeconds(publication)));
+    }
+    ReleaseIndex index = builder.build();
+
+    List<Long> expected =
+        releases.stream()
+            .sorted(
+                Comparator.comparing(
+                        Release::publication, Comparator.nullsLast(Comparator.naturalOrder()))
+                    .thenComparingLong(Release::id))
+            .map(Release::id)
+            .collect(toList());
+    assertThat(Arrays.stream(index.oldestFirst()).mapToObj(p -> index.id(p)).collect(toList()))
+        .isEqualTo(expected);
+  }
+
+  @Test
+  void releaseIndexParsesGithubDates() {
+    for (String date :
+        Arrays.asList(
+            "2021-03-01T10:37:58Z",
+            "1970-01-01T00:00:00Z",
+            "2000-02-29T23:59:59Z",
+            "2100-12-31T12:00:00Z",
+            "2021-03-01T10:37:58.123Z",
+            "2021-03-01T11:37:58+01:00")) {
+      assertThat(ReleaseIndex.epochSecond(date))
+          .as(date)
+          .isEqualTo(ZonedDateTime.parse(date).toEpochSecond());
+    }
+  }
+
+  @Test
+  void minorLineTest() {
+    assertThat(RetentionPolicy.minorLine("v3.9.0-alpha-stream.4")).isEqualTo("3.9");
+    assertThat(RetentionPolicy.minorLine("v-stream-perf-test-0.1.0-SNAPSHOT")).isEqualTo("0.1");
+    assertThat(RetentionPolicy.minorLine("nightly")).isNull();
+  }
+
+  static Release release(long id, String tag, String date, boolean draft, boolean prerelease) {
+    return new Release(
+        id,
+        null,
+        tag,
+        date == null
+            ? null
+            : ZonedDateTime.parse(date + "T08:38:25Z", DateTimeFormatter.ISO_ZONED_DATE_TIME),
+        draft,
+        prerelease);
+  }
+
+  @Test
+  void metricsEndpoint() {
+    assertThat(endpoint("GET", "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases"))
+        .isEqualTo("GET /releases");
+    assertThat(
+            endpoint(
+                "GET",
+                "https://api.github.com/repositories/343344332/releases?per_page=100&page=3"))
+        .isEqualTo("GET /repositories/{id}/releases");
+    assertThat(
+            endpoint(
+                "DELETE",
+                "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/39045306"))
+        .isEqualTo("DELETE /releases/{id}");
+    assertThat(
+            endpoint(
+                "DELETE",
+                "https://api.github.com/repos/rabbitmq/rabbitmq-server/git/refs/tags/v3.9.0-alpha.1"))
+        .isEqualTo("DELETE /git/refs/tags/{tag}");
+    assertThat(
+            endpoint(
+                "GET",
+                "https://api.github.com/repos/rabbitmq/rabbitmq-server/git/matching-refs/tags/v3.9"))
+        .isEqualTo("GET /git/matching-refs/tags/{prefix}");
+    assertThat(
+            endpoint(
+                "GET",
+                "https://api.github.com/repos/rabbitmq/rabbitmq-server/releases/tags/v3.9.0-alpha.1"))
+        .isEqualTo("GET /releases/tags/{tag}");
+    assertThat(endpoint("POST", "https://api.github.com/graphql")).isEqualTo("POST /graphql");
+  }
+
+  @Test
+  void metricsPercentilesAndMetadata() {
+    List<Long> latencies = LongStream.rangeClosed(1, 100).boxed().collect(toList());
+    assertThat(Metrics.percentile(latencies, 50)).isEqualTo(50);
+    assertThat(Metrics.percentile(latencies, 99)).isEqualTo(99);
+    assertThat(Metrics.percentile(latencies, 100)).isEqualTo(100);
+    assertThat(Metrics.percentile(Collections.emptyList(), 50)).isZero();
+
+    Metrics metrics = new Metrics();
+    HttpRequest request =
+        HttpRequest.newBuilder(
+                URI.create("https://api.github.com/repos/rabbitmq/rabbitmq-server/releases"))
+            .build();
+    for (int i = 1; i <= 10; i++) {
+      metrics.request(request, Duration.ofMillis(i * 10).toNanos());
+    }
+    metrics.pageParsed();
+    List<RepositorySummary> summaries =
+        Arrays.asList(
+            new RepositorySummary("rabbitmq-server", 2, 8, 1, null),
+            new RepositorySummary("rabbitmq-java-tools", 3, 4, 0, null));
+
+    Map<String, String> metadata = metrics.metadata(Duration.ofSeconds(2), summaries, 4900);
+    assertThat(metadata)
+        .containsEntry("duration", "2000 ms")
+        .containsEntry("pages", "1")
+        .containsEntry("requests", "10")
+        .containsEntry("latency p50/p99", "50/100 ms")
+        .containsEntry("kept", "5")
+        .containsEntry("deleted", "12")
+        .containsEntry("failures", "1")
+        .containsEntry("rate limit remaining", "4900");
+
+    JsonObject report = metrics.report(Duration.ofSeconds(2), summaries, 4900);
+    assertThat(
+            report
+                .getAsJsonObject("endpoints")
+                .getAsJsonObject("GET /releases")
+                .get("p90_ms")
+                .getAsLong())
+        .isEqualTo(90);
+    assertThat(report.getAsJsonArray("repositories")).hasSize(2);
+  }
+
+  @Test
+  void versionContainsMetadata() {
+    String version = GithubReleaseDeleteResource.version(Map.of("deleted", "12"));
+    JsonObject json = JsonParser.parseString(version).getAsJsonObject();
+    assertThat(json.getAsJsonObject("version").get("version").getAsString()).isEqualTo("<DELETED>");
+    assertThat(json.getAsJsonArray("metadata")).hasSize(1);
+    assertThat(json.getAsJsonArray("metadata").get(0).getAsJsonObject().get("name").getAsString())
+        .isEqualTo("deleted");
+  }
+
+  static String endpoint(String method, String uri) {
+    return Metrics.endpoint(
+        HttpRequest.newBuilder(URI.create(uri)).method(method, BodyPublishers.noBody()).build());
+  }
 }
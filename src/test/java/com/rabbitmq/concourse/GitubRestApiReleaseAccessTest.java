@@ -0,0 +1,843 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import static java.util.Comparator.comparingLong;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ApiBenchmark;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.DeletionJournal;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.GitubRestApiReleaseAccess;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Input;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Metrics;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Release;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ReleaseIndex;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RepositorySummary;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RequestScheduler;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class GitubRestApiReleaseAccessTest {
+
+  FakeGithubServer server;
+
+  @BeforeEach
+  void init() throws Exception {
+    server = new FakeGithubServer("rabbitmq", "rabbitmq-server-binaries-dev").start();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.close();
+  }
+
+  InputBuilder input() {
+    return new InputBuilder();
+  }
+
+  /** Builds an input for the fake server, without params unless they are set. */
+  class InputBuilder {
+
+    private final JsonObject source = new JsonObject();
+    private final JsonObject input = new JsonObject();
+
+    private InputBuilder() {
+      source.addProperty("owner", "rabbitmq");
+      source.addProperty("repository", "rabbitmq-server-binaries-dev");
+      source.addProperty("access_token", "42");
+      source.addProperty("api_url", server.apiUrl());
+      input.add("source", source);
+    }
+
+    InputBuilder source(String name, String value) {
+      source.addProperty(name, value);
+      return this;
+    }
+
+    InputBuilder cacheDirectory(Path cacheDirectory) {
+      return source("cache_directory", cacheDirectory.toString());
+    }
+
+    InputBuilder params(String params) {
+      input.add("params", JsonParser.parseString(params));
+      return this;
+    }
+
+    InputBuilder version(String version) {
+      input.add("version", JsonParser.parseString(version));
+      return this;
+    }
+
+    Input build() {
+      return GithubReleaseDeleteResource.GSON.fromJson(input, Input.class);
+    }
+  }
+
+  @Test
+  void listFetchesAllPages() {
+    server.addReleases("v3.9.0-alpha.", 1050);
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(HttpClient.newHttpClient(), 8));
+
+    List<Release> releases = access.list();
+
+    assertThat(releases).hasSize(1050);
+    assertThat(releases.get(0).id()).isEqualTo(1050);
+    assertThat(releases.get(1049).id()).isEqualTo(1);
+    assertThat(releases.get(0).url())
+        .isEqualTo(server.apiUrl() + "/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/1050");
+    assertThat(server.requests("GET /releases")).isEqualTo(11);
+  }
+
+  @Test
+  void listPagesOldestFirstWaitsForTheConsumer() {
+    server.addReleases("v3.9.0-alpha.", 5000);
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(HttpClient.newHttpClient(), 8));
+    List<ReleaseIndex> pages = new ArrayList<>();
+    AtomicInteger requestsWhileConsuming = new AtomicInteger();
+
+    access.listPagesOldestFirst(
+        null,
+        page -> {
+          if (pages.isEmpty()) {
+            try {
+              Thread.sleep(500);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            requestsWhileConsuming.set(server.requests("GET /releases"));
+          }
+          pages.add(page);
+        });
+
+    assertThat(requestsWhileConsuming.get())
+        .isEqualTo(2 + GitubRestApiReleaseAccess.MAX_PAGES_AHEAD);
+    assertThat(pages).hasSize(50);
+    assertThat(pages.get(0).id(99)).isEqualTo(1);
+    assertThat(pages.get(49).id(0)).isEqualTo(5000);
+  }
+
+  @Test
+  void listAcceptsCompressedPages() {
+    server.addReleases("v3.9.0-alpha.", 300);
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    Metrics compressed = new Metrics();
+    List<Release> releases =
+        new GitubRestApiReleaseAccess(
+                input.source(),
+                "rabbitmq-server-binaries-dev",
+                GithubReleaseDeleteResource.scheduler(input, compressed))
+            .list();
+    server.gzip(false);
+    Metrics uncompressed = new Metrics();
+    List<Release> uncompressedReleases =
+        new GitubRestApiReleaseAccess(
+                input.source(),
+                "rabbitmq-server-binaries-dev",
+                GithubReleaseDeleteResource.scheduler(input, uncompressed))
+            .list();
+
+    assertThat(releases).hasSize(300).isEqualTo(uncompressedReleases);
+    assertThat(releases.get(0).tag()).isEqualTo("v3.9.0-alpha.300");
+    assertThat(compressed.bytesReceived()).isLessThan(uncompressed.bytesReceived() / 5);
+  }
+
+  @Test
+  void cleanUpListsFromPrefetchedFirstPage() {
+    server.addReleases("v3.9.0-alpha.", 250);
+    Input input =
+        input().params("{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5 }").build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    GithubReleaseDeleteResource.prefetch(input, scheduler);
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(245);
+    assertThat(server.releases()).hasSize(5);
+    // the first page is not requested again
+    assertThat(server.requests("GET /releases")).isEqualTo(3);
+  }
+
+  @Test
+  void prefetchedFirstPageCanBeTakenAfterTimeout() throws Exception {
+    server.addReleases("v3.9.0-alpha.", 250).gzip(false);
+    Input input =
+        input()
+            .source("request_timeout", "PT0.2S")
+            .params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    GithubReleaseDeleteResource.prefetch(input, scheduler);
+    // e.g. other requests or a rate limit pause before the listing
+    Thread.sleep(600);
+    List<Release> releases =
+        new GitubRestApiReleaseAccess(input.source(), "rabbitmq-server-binaries-dev", scheduler)
+            .list();
+
+    assertThat(releases).hasSize(250);
+    assertThat(server.requests("GET /releases")).isEqualTo(3);
+  }
+
+  @Test
+  void cleanUpDeletesOldestReleasesAndTheirTags() {
+    server.addReleases("v3.9.0-alpha.", 300).addReleases("v3.8.0-alpha.", 10);
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5, \"parallelism\": 8 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries).hasSize(1);
+    assertThat(summaries.get(0).deleted()).isEqualTo(295);
+    assertThat(summaries.get(0).kept()).isEqualTo(5);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.releases()).hasSize(15);
+    assertThat(
+            server.releases().stream().filter(r -> r.tag().startsWith("v3.9.0")).map(r -> r.id()))
+        .containsExactly(300L, 299L, 298L, 297L, 296L);
+    assertThat(server.tags()).hasSize(15);
+    assertThat(server.requests("DELETE /releases/{id}")).isEqualTo(295);
+    assertThat(server.requests("DELETE /git/refs/tags/{tag}")).isEqualTo(295);
+  }
+
+  @Test
+  void cleanUpAppliesSeveralRulesToOneListing() {
+    server
+        .addReleases("v-stream-a-", 100)
+        .addReleases("v-stream-b-", 100)
+        .addReleases("v-stream-c-", 100);
+    Input input =
+        input()
+            .params(
+                "{ \"rules\": [ { \"tag_filter\": \"^v-stream-a-[0-9]+$\", \"keep_last_n\": 2 },"
+                    + " { \"tag_filter\": \"^v-stream-b-[0-9]+$\", \"keep_last_n\": 2 } ],"
+                    + " \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).kept()).isEqualTo(4);
+    assertThat(summaries.get(0).deleted()).isEqualTo(196);
+    assertThat(
+            server.releases().stream().map(r -> r.tag()).filter(t -> !t.startsWith("v-stream-c")))
+        .containsExactly("v-stream-b-200", "v-stream-b-199", "v-stream-a-100", "v-stream-a-99");
+    assertThat(server.requests("GET /releases")).isEqualTo(3);
+  }
+
+  @Test
+  void cleanUpResumesInterruptedRunFromJournal(@TempDir Path cacheDirectory) {
+    server.addReleases("v3.9.0-alpha.", 20);
+    Input input =
+        input()
+            .params("{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 10 }")
+            .cacheDirectory(cacheDirectory)
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+    // a previous run planned to delete the 10 oldest releases and was killed
+    List<Release> toDelete =
+        new GitubRestApiReleaseAccess(input.source(), "rabbitmq-server-binaries-dev", scheduler)
+            .list().stream().filter(r -> r.id() <= 10).sorted(comparingLong(Release::id)).toList();
+    DeletionJournal journal = DeletionJournal.of(input, "rabbitmq-server-binaries-dev");
+    journal.start(toDelete, 10, Instant.now());
+    for (Release release : toDelete.subList(0, 4)) {
+      journal.releaseDeleted(release);
+      journal.tagDeleted(release);
+    }
+    journal.releaseDeleted(toDelete.get(4));
+    int listings = server.requests("GET /releases");
+
+    GithubReleaseDeleteResource.prefetch(input, scheduler);
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    // only the deletions of this run are counted
+    assertThat(summaries.get(0).deleted()).isEqualTo(6);
+    assertThat(summaries.get(0).kept()).isEqualTo(10);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.requests("GET /releases")).isEqualTo(listings);
+    assertThat(server.requests("DELETE /releases/{id}")).isEqualTo(5);
+    assertThat(server.requests("DELETE /git/refs/tags/{tag}")).isEqualTo(6);
+    // the confirmed deletions are not sent again, the fake server still has these releases
+    assertThat(server.releases()).hasSize(15).noneMatch(r -> r.id() > 5 && r.id() <= 10);
+    // the run completed, the next one lists again
+    assertThat(DeletionJournal.of(input, "rabbitmq-server-binaries-dev").resume(Instant.now()))
+        .isNull();
+  }
+
+  @Test
+  void cleanUpDiscardsStaleOrOtherRulesJournal(@TempDir Path cacheDirectory) {
+    server.addReleases("v3.9.0-alpha.", 20);
+    Input input =
+        input()
+            .params("{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 10 }")
+            .cacheDirectory(cacheDirectory)
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+    List<Release> toDelete = List.of(new Release(15, "v3.9.0-alpha.15"));
+    DeletionJournal.of(input, "rabbitmq-server-binaries-dev")
+        .start(toDelete, 10, Instant.now().minus(Duration.ofHours(2)));
+    assertThat(DeletionJournal.of(input, "rabbitmq-server-binaries-dev").resume(Instant.now()))
+        .isNull();
+
+    DeletionJournal.of(
+            input()
+                .params("{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5 }")
+                .cacheDirectory(cacheDirectory)
+                .build(),
+            "rabbitmq-server-binaries-dev")
+        .start(toDelete, 10, Instant.now());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(10);
+    assertThat(server.releases()).hasSize(10).allMatch(r -> r.id() > 10);
+  }
+
+  @Test
+  void cleanUpStopsAtMaxDeletionsAndNextRunResumes(@TempDir Path cacheDirectory) {
+    server.addReleases("v3.9.0-alpha.", 30);
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5, "
+                    + "\"max_deletions\": 10, \"parallelism\": 4 }")
+            .cacheDirectory(cacheDirectory)
+            .build();
+    Metrics metrics = new Metrics();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, metrics);
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(10);
+    assertThat(summaries.get(0).remaining()).isEqualTo(15);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.releases()).hasSize(20).allMatch(r -> r.id() > 10);
+    assertThat(metrics.metadata(Duration.ZERO, summaries, -1)).containsEntry("remaining", "15");
+
+    // the next run resumes the plan, without listing releases again
+    int listings = server.requests("GET /releases");
+    summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(10);
+    assertThat(summaries.get(0).remaining()).isEqualTo(5);
+    assertThat(server.releases()).hasSize(10).allMatch(r -> r.id() > 20);
+    assertThat(server.requests("GET /releases")).isEqualTo(listings);
+  }
+
+  @Test
+  void cleanUpStopsAtMaxRequests() {
+    server.addReleases("v3.9.0-alpha.", 30);
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5, \"max_requests\": 11 }")
+            .build();
+    Metrics metrics = new Metrics();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, metrics);
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    // 1 listing request, then 2 requests per deletion
+    assertThat(summaries.get(0).deleted()).isEqualTo(5);
+    assertThat(summaries.get(0).remaining()).isEqualTo(20);
+    assertThat(metrics.requests()).isEqualTo(11);
+    assertThat(server.releases()).hasSize(25).allMatch(r -> r.id() > 5);
+  }
+
+  @Test
+  void cleanUpStopsAtMaxDuration() {
+    server.addReleases("v3.9.0-alpha.", 30);
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5, "
+                    + "\"max_duration\": \"PT0S\" }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isZero();
+    assertThat(summaries.get(0).remaining()).isEqualTo(25);
+    assertThat(server.releases()).hasSize(30);
+  }
+
+  @Test
+  void cleanUpPipelinedDeletesWhileListing() {
+    server
+        .addReleases("v3.9.0-alpha.", 1050)
+        .addReleases("v3.8.0-alpha.", 10)
+        .latency(Duration.ofMillis(2));
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 50, "
+                    + "\"pipelined\": true, \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(1000);
+    assertThat(summaries.get(0).kept()).isEqualTo(50);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(summaries.get(0).remaining()).isZero();
+    assertThat(server.releases().stream().map(r -> r.id()))
+        .containsAll(LongStream.rangeClosed(1001, 1050).boxed().toList());
+    assertThat(server.releases()).hasSize(60);
+    assertThat(server.tags()).hasSize(60);
+  }
+
+  @Test
+  void checkEmitsNewVersionOnlyWhenMatchingReleasesChange() {
+    server.addReleases("v3.9.0-alpha.", 20).addReleases("v3.8.0-alpha.", 5);
+    Input input =
+        input().source("tag_filter", "^v3\\.9\\..*$").version("{ \"digest\": \"abc\" }").build();
+    assertThat(input.version()).containsEntry("digest", "abc");
+    RequestScheduler scheduler =
+        GithubReleaseDeleteResource.scheduler(input.source(), 1, new Metrics());
+    List<String> repositories = List.of("rabbitmq-server-binaries-dev");
+
+    Map<String, String> first =
+        GithubReleaseDeleteResource.checkVersion(input.source(), repositories, scheduler);
+    assertThat(first).containsEntry("newest_release_id", "20").containsKey("digest");
+    assertThat(GithubReleaseDeleteResource.check(null, first)).containsExactly(first);
+
+    // a release the tag filter does not match
+    server.addReleases("v3.8.0-alpha.", 1);
+    Map<String, String> second =
+        GithubReleaseDeleteResource.checkVersion(input.source(), repositories, scheduler);
+    assertThat(second).isEqualTo(first);
+    assertThat(GithubReleaseDeleteResource.check(first, second)).containsExactly(first);
+
+    server.addReleases("v3.9.0-alpha.", 1);
+    Map<String, String> third =
+        GithubReleaseDeleteResource.checkVersion(input.source(), repositories, scheduler);
+    assertThat(third.get("digest")).isNotEqualTo(first.get("digest"));
+    assertThat(third).containsEntry("newest_release_id", "27");
+    assertThat(GithubReleaseDeleteResource.check(first, third)).containsExactly(third);
+    assertThat(server.requests("GET /releases")).isEqualTo(3);
+  }
+
+  @Test
+  void checkSendsConditionalRequestWithCache(@TempDir Path cacheDirectory) {
+    server.addReleases("v3.9.0-alpha.", 150);
+    Input input =
+        input()
+            .source("tag_filter", "^v3\\.9\\..*$")
+            .version("{ \"digest\": \"abc\" }")
+            .cacheDirectory(cacheDirectory)
+            .build();
+    RequestScheduler scheduler =
+        GithubReleaseDeleteResource.scheduler(input.source(), 1, new Metrics());
+    List<String> repositories = List.of("rabbitmq-server-binaries-dev");
+
+    Map<String, String> first =
+        GithubReleaseDeleteResource.checkVersion(input.source(), repositories, scheduler);
+    Map<String, String> second =
+        GithubReleaseDeleteResource.checkVersion(input.source(), repositories, scheduler);
+
+    assertThat(second).isEqualTo(first).containsEntry("newest_release_id", "150");
+    // only the first page is requested, the second time with its ETag
+    assertThat(server.requests("GET /releases")).isEqualTo(2);
+    assertThat(server.notModified()).isEqualTo(1);
+  }
+
+  @Test
+  void benchMeasuresApiAndRecommendsSettings() throws Exception {
+    server.addReleases("v3.9.0-alpha.", 150).rateLimit(5000, Instant.now().plusSeconds(3600));
+    Input input = input().params("{ }").build();
+
+    JsonObject report = new ApiBenchmark(input.source(), "rabbitmq-server-binaries-dev").run();
+
+    assertThat(report.getAsJsonObject("connection").has("connect_ms")).isTrue();
+    assertThat(report.getAsJsonObject("connection").has("tls_handshake_ms")).isFalse();
+    assertThat(report.getAsJsonObject("rate_limit").get("remaining").getAsLong()).isEqualTo(4999);
+    assertThat(report.getAsJsonArray("pages"))
+        .extracting(p -> p.getAsJsonObject().get("releases").getAsInt())
+        .containsExactly(10, 30, 100);
+    // no HTTP/2 on cleartext
+    assertThat(report.getAsJsonArray("throughput"))
+        .hasSize(ApiBenchmark.CONCURRENCIES.length)
+        .allMatch(t -> "HTTP/1.1".equals(t.getAsJsonObject().get("http_version").getAsString()));
+    JsonObject recommendation = report.getAsJsonObject("recommendation");
+    assertThat(recommendation.get("parallelism").getAsInt()).isIn(1, 2, 4, 8);
+    assertThat(recommendation.get("page_size").getAsInt()).isIn(10, 30, 100);
+    assertThat(server.releases()).hasSize(150);
+    assertThat(server.requests("DELETE /releases/{id}")).isZero();
+  }
+
+  @Test
+  void benchSkipsThroughputWhenRateLimitBudgetIsLow() throws Exception {
+    server.addReleases("v3.9.0-alpha.", 10).rateLimit(100, Instant.now().plusSeconds(3600));
+    Input input = input().params("{ }").build();
+
+    JsonObject report = new ApiBenchmark(input.source(), "rabbitmq-server-binaries-dev").run();
+
+    assertThat(report.getAsJsonArray("throughput")).isEmpty();
+    assertThat(report.getAsJsonObject("recommendation").has("parallelism")).isFalse();
+    assertThat(report.getAsJsonObject("recommendation").get("deletions_in_budget").getAsLong())
+        .isEqualTo(49);
+    assertThat(server.requests("GET /releases")).isEqualTo(1 + 3 * ApiBenchmark.SAMPLES);
+  }
+
+  @Test
+  void cleanUpSweepsOrphanedTags() {
+    server
+        .addReleases("v3.9.0-alpha.", 20)
+        .addTags("v3.9.0-alpha.0", "v3.9.0-alpha.100", "v3.9.0-alpha.101", "v3.8.0");
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3.9.0-alpha.[0-9]+$\", \"keep_last_n\": 5, "
+                    + "\"sweep_orphaned_tags\": true, \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(15);
+    assertThat(summaries.get(0).orphanedTags()).isEqualTo(3);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.releases()).hasSize(5);
+    assertThat(server.tags())
+        .containsExactly(
+            "v3.8.0",
+            "v3.9.0-alpha.16",
+            "v3.9.0-alpha.17",
+            "v3.9.0-alpha.18",
+            "v3.9.0-alpha.19",
+            "v3.9.0-alpha.20");
+    assertThat(server.requests("GET /git/matching-refs/tags/{prefix}")).isEqualTo(1);
+  }
+
+  @Test
+  void cleanUpSweepingOrphanedTagsKeepsTagsOfDrafts() {
+    server
+        .addReleases("v3.8.0-alpha.", 1000)
+        .addDraft("v3.9.0-alpha.draft")
+        .addReleases("v3.9.0-alpha.", 3)
+        .addReleases("v3.8.0-alpha.", 100)
+        .addTags("v3.9.0-alpha.orphan");
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v3\\\\.9\\\\.0-alpha\\\\..+$\", \"keep_last_n\": 1, "
+                    + "\"skip_drafts\": true, \"sweep_orphaned_tags\": true, \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).deleted()).isEqualTo(2);
+    assertThat(summaries.get(0).orphanedTags()).isEqualTo(1);
+    assertThat(server.tags()).contains("v3.9.0-alpha.draft").doesNotContain("v3.9.0-alpha.orphan");
+    assertThat(server.requests("GET /git/matching-refs/tags/{prefix}")).isEqualTo(1);
+    assertThat(server.requests("GET /releases/tags/{tag}")).isZero();
+  }
+
+  @Test
+  void cleanUpEncodesTagsInPaths() {
+    server.addReleases("v-stream#%/", 30).addReleases("v3.9.0-alpha.", 5000);
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v-stream#%/[0-9]+$\", \"keep_last_n\": 5, "
+                    + "\"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).kept()).isEqualTo(5);
+    assertThat(summaries.get(0).deleted()).isEqualTo(25);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.tags()).contains("v-stream#%/30").doesNotContain("v-stream#%/1");
+    // the tags are resolved one by one
+    assertThat(server.requests("GET /releases")).isEqualTo(1);
+  }
+
+  @Test
+  void cleanUpResolvesOnlyTagsWithFilterPrefix() {
+    server
+        .addReleases("v-stream-perf-test-0.1.0-SNAPSHOT-", 30)
+        .addReleases("v3.9.0-alpha.", 5000)
+        .addTags("v-stream-perf-test-0.1.0-SNAPSHOT-orphan");
+    Input input =
+        input()
+            .params(
+                "{ \"tag_filter\": \"^v-stream-perf-test-0\\\\.1\\\\.0-SNAPSHOT-[0-9]+$\", "
+                    + "\"keep_last_n\": 5, \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).kept()).isEqualTo(5);
+    assertThat(summaries.get(0).deleted()).isEqualTo(25);
+    assertThat(server.releases()).hasSize(5005);
+    assertThat(server.requests("GET /releases")).isEqualTo(1);
+    assertThat(server.requests("GET /git/matching-refs/tags/{prefix}")).isEqualTo(1);
+    assertThat(server.requests("GET /releases/tags/{tag}")).isEqualTo(31);
+  }
+
+  @Test
+  void listWithPrefixFallsBackToFullListing() {
+    server.addReleases("v3.9.0-alpha.", 1050);
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(HttpClient.newHttpClient(), 8));
+
+    List<Release> releases = access.list("v3.9.0-alpha.");
+
+    // more tags than pages
+    assertThat(releases).hasSize(1050);
+    assertThat(server.requests("GET /releases")).isEqualTo(11);
+    assertThat(server.requests("GET /releases/tags/{tag}")).isZero();
+  }
+
+  @Test
+  void deletionsAreIdempotent() {
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(HttpClient.newHttpClient(), 8));
+    Release release = new Release(42, access.releaseUrl(42), "v3.9.0-alpha.42", null);
+
+    // 404 and 422
+    access.delete(release);
+    access.deleteTag(release);
+
+    assertThat(server.requests("DELETE /releases/{id}")).isEqualTo(1);
+    assertThat(server.requests("DELETE /git/refs/tags/{tag}")).isEqualTo(1);
+  }
+
+  @Test
+  void serverErrorsAreRetried() {
+    server
+        .addReleases("v3.9.0-alpha.", 250)
+        .failNext("GET /releases", 2)
+        .failNext("DELETE /releases/{id}", 5)
+        .failNext("DELETE /git/refs/tags/{tag}", 5);
+    Input input =
+        input()
+            .params("{ \"tag_filter\": \".*\", \"keep_last_n\": 10, \"parallelism\": 4 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).error()).isNull();
+    assertThat(summaries.get(0).deleted()).isEqualTo(240);
+    assertThat(summaries.get(0).failures()).isZero();
+    assertThat(server.releases()).hasSize(10);
+    assertThat(server.tags()).hasSize(10);
+    assertThat(server.requests("GET /releases")).isEqualTo(5);
+  }
+
+  @Test
+  void persistentServerErrorsAreReported() {
+    server.addReleases("v3.9.0-alpha.", 1).errorRate(1.0);
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(
+                HttpClient.newHttpClient(),
+                8,
+                new Metrics(),
+                Duration.ofSeconds(1),
+                Duration.ofMillis(10)));
+
+    assertThatThrownBy(() -> access.delete(new Release(1, access.releaseUrl(1), "v1", null)))
+        .hasMessageContaining("502");
+    assertThatThrownBy(() -> access.list()).hasMessageContaining("502");
+    assertThat(server.requests("DELETE /releases/{id}"))
+        .isEqualTo(RequestScheduler.MAX_ERROR_RETRIES + 1);
+  }
+
+  @Test
+  void stalledResponseBodyIsRequestedAgain() {
+    server.addReleases("v3.9.0-alpha.", 250).stallPage(2, Duration.ofSeconds(10));
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }").build();
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(
+            input.source(),
+            "rabbitmq-server-binaries-dev",
+            new RequestScheduler(
+                HttpClient.newHttpClient(),
+                8,
+                new Metrics(),
+                Duration.ofMillis(500),
+                Duration.ofMillis(10)));
+
+    long start = System.nanoTime();
+    List<Release> releases = access.list();
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    assertThat(releases).hasSize(250);
+    // the stalled page is requested twice
+    assertThat(server.requests("GET /releases")).isEqualTo(4);
+  }
+
+  @Test
+  void responseBodyReadAfterTimeoutIsComplete() throws Exception {
+    server.addReleases("v3.9.0-alpha.", 100).gzip(false);
+    RequestScheduler scheduler =
+        new RequestScheduler(
+            HttpClient.newHttpClient(),
+            8,
+            new Metrics(),
+            Duration.ofMillis(200),
+            Duration.ofMillis(10));
+    HttpRequest request =
+        HttpRequest.newBuilder(
+                URI.create(
+                    server.apiUrl()
+                        + "/repos/rabbitmq/rabbitmq-server-binaries-dev/releases?per_page=100"))
+            .build();
+
+    HttpResponse<InputStream> response = scheduler.send(request, BodyHandlers.ofInputStream());
+    // the body waits for its reader longer than the timeout
+    Thread.sleep(600);
+    ReleaseIndex.Builder releases = new ReleaseIndex.Builder();
+    try (InputStream body = response.body()) {
+      GithubReleaseDeleteResource.parseReleases(body, releases);
+    }
+
+    assertThat(releases.build().size()).isEqualTo(100);
+  }
+
+  @Test
+  void slowPagesAreHedged() {
+    server.addReleases("v3.9.0-alpha.", 2000).slowPage(15, Duration.ofSeconds(10));
+    Input input =
+        input()
+            .source("hedge_percentile", "90")
+            .params("{ \"tag_filter\": \".*\", \"keep_last_n\": 0 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+    GitubRestApiReleaseAccess access =
+        new GitubRestApiReleaseAccess(input.source(), "rabbitmq-server-binaries-dev", scheduler);
+
+    long start = System.nanoTime();
+    List<Release> releases = access.list();
+
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(5));
+    assertThat(releases).hasSize(2000);
+    assertThat(releases.stream().map(Release::id).distinct()).hasSize(2000);
+    assertThat(scheduler.metrics().hedgedRequests()).isPositive();
+    // a cancelled hedged request may not reach the server
+    assertThat(server.requests("GET /releases"))
+        .isBetween(21, 20 + (int) scheduler.metrics().hedgedRequests());
+  }
+
+  @Test
+  void rateLimitHeadersAreTracked() {
+    server
+        .addReleases("v3.9.0-alpha.", 10)
+        .rateLimit(5000, Instant.now().plusSeconds(3600))
+        .latency(Duration.ofMillis(10));
+    Input input = input().params("{ \"tag_filter\": \".*\", \"keep_last_n\": 8 }").build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    GithubReleaseDeleteResource.cleanUp(input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    // 1 page, 2 releases and 2 tags
+    assertThat(scheduler.remaining()).isEqualTo(4995);
+    assertThat(scheduler.metrics().requests()).isEqualTo(5);
+    assertThat(scheduler.metrics().pagesParsed()).isEqualTo(1);
+    assertThat(scheduler.metrics().bytesReceived()).isPositive();
+  }
+
+  @Test
+  void throughputWithManyReleases() {
+    server.addReleases("v-stream-perf-test-", 10_000);
+    Input input =
+        input()
+            .params("{ \"tag_filter\": \".*\", \"keep_last_n\": 9000, \"parallelism\": 32 }")
+            .build();
+    RequestScheduler scheduler = GithubReleaseDeleteResource.scheduler(input, new Metrics());
+
+    List<RepositorySummary> summaries =
+        GithubReleaseDeleteResource.cleanUp(
+            input, List.of("rabbitmq-server-binaries-dev"), scheduler);
+
+    assertThat(summaries.get(0).kept()).isEqualTo(9_000);
+    assertThat(summaries.get(0).deleted()).isEqualTo(1_000);
+    assertThat(server.releases()).hasSize(9_000);
+    assertThat(server.tags()).hasSize(9_000);
+    assertThat(server.releases().get(8_999).id()).isEqualTo(1_001L);
+  }
+}
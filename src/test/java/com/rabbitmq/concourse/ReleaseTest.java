@@ -8,8 +8,12 @@ package com.rabbitmq.concourse;
 import static org.assertj.core.api.Assertions.assertThat;
 
 import com.rabbitmq.concourse.GithubReleaseDeleteResource.Release;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.ReleaseIndex;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 public class ReleaseTest {
@@ -102,4 +106,55 @@ public class ReleaseTest {
         .isEqualTo(
             ZonedDateTime.parse("2021-03-01T10:37:58Z", DateTimeFormatter.ISO_ZONED_DATE_TIME));
   }
+
+  @Test
+  void parseReleasesStreamsOnlyNeededFields() throws Exception {
+    String page = "[" + SAMPLE + "," + SAMPLE.replace("39045306", "39045307") + "]";
+    ReleaseIndex.Builder index = new ReleaseIndex.Builder();
+    GithubReleaseDeleteResource.parseReleases(
+        new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), index);
+    List<Release> releases = index.build().toList();
+
+    assertThat(releases).hasSize(2);
+    assertThat(releases.get(0).id()).isEqualTo(39045306);
+    assertThat(releases.get(1).id()).isEqualTo(39045307);
+    assertThat(releases.get(1).url())
+        .isEqualTo(
+            "https://api.github.com/repos/rabbitmq/rabbitmq-server-binaries-dev/releases/39045307");
+    assertThat(releases)
+        .allSatisfy(
+            r -> {
+              assertThat(r.tag()).isEqualTo("v3.9.0-alpha-stream.4");
+              assertThat(r.publication())
+                  .isEqualTo(
+                      ZonedDateTime.parse(
+                          "2021-03-01T10:37:58Z", DateTimeFormatter.ISO_ZONED_DATE_TIME));
+            });
+  }
+
+  @Test
+  void parseReleasesAcceptsNullPublicationDate() throws Exception {
+    String page = "[" + SAMPLE.replace("\"2021-03-01T10:37:58Z\"", "null") + "]";
+    ReleaseIndex.Builder index = new ReleaseIndex.Builder();
+    GithubReleaseDeleteResource.parseReleases(
+        new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), index);
+    List<Release> releases = index.build().toList();
+
+    assertThat(releases).hasSize(1);
+    assertThat(releases.get(0).publication()).isNull();
+  }
+
+  @Test
+  void serializeAndDeserialize() {
+    Release release = GithubReleaseDeleteResource.GSON.fromJson(SAMPLE, Release.class);
+    Release copy =
+        GithubReleaseDeleteResource.GSON.fromJson(
+            GithubReleaseDeleteResource.GSON.toJson(release), Release.class);
+    assertThat(copy).isEqualTo(release);
+    assertThat(copy.url()).isEqualTo(release.url());
+    assertThat(copy.tag()).isEqualTo(release.tag());
+    assertThat(copy.publication()).isEqualTo(release.publication());
+    assertThat(copy.prerelease()).isTrue();
+    assertThat(copy.draft()).isFalse();
+  }
 }
@@ -0,0 +1,192 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at https://mozilla.org/MPL/2.0/.
+ */
+package com.rabbitmq.concourse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.Metrics;
+import com.rabbitmq.concourse.GithubReleaseDeleteResource.RequestScheduler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RequestSchedulerTest {
+
+  HttpServer server;
+  Queue<Consumer<HttpExchange>> responses = new ConcurrentLinkedQueue<>();
+  AtomicInteger requests = new AtomicInteger();
+  RequestScheduler scheduler;
+  HttpRequest request;
+
+  @BeforeEach
+  void init() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.createContext(
+        "/",
+        exchange -> {
+          requests.incrementAndGet();
+          Consumer<HttpExchange> response = responses.poll();
+          if (response == null) {
+            response = respond(200);
+          }
+          response.accept(exchange);
+          exchange.close();
+        });
+    server.start();
+    scheduler =
+        new RequestScheduler(
+            HttpClient.newHttpClient(),
+            8,
+            new Metrics(),
+            Duration.ofMillis(500),
+            Duration.ofMillis(10));
+    request =
+        HttpRequest.newBuilder(
+                URI.create("http://localhost:" + server.getAddress().getPort() + "/releases"))
+            .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  @Test
+  void secondaryRateLimitIsRetriedAndCutsConcurrency() throws Exception {
+    responses.add(respond(429, "Retry-After", "0"));
+
+    HttpResponse<Void> response = scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(requests).hasValue(2);
+    assertThat(scheduler.concurrency()).isEqualTo(4);
+
+    for (int i = 0; i < 40; i++) {
+      scheduler.send(request, BodyHandlers.discarding());
+    }
+    assertThat(scheduler.concurrency()).isEqualTo(8);
+  }
+
+  @Test
+  void exhaustedBudgetPausesUntilReset() throws Exception {
+    long reset = Instant.now().plusSeconds(2).getEpochSecond();
+    responses.add(
+        respond(200, "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(reset)));
+
+    scheduler.send(request, BodyHandlers.discarding());
+    assertThat(scheduler.remaining()).isZero();
+    scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(Instant.now()).isAfterOrEqualTo(Instant.ofEpochSecond(reset));
+    assertThat(requests).hasValue(2);
+  }
+
+  @Test
+  void forbiddenWithoutRateLimitIsNotRetried() throws Exception {
+    responses.add(respond(403, "X-RateLimit-Remaining", "4999"));
+
+    HttpResponse<Void> response = scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(403);
+    assertThat(requests).hasValue(1);
+    assertThat(scheduler.remaining()).isEqualTo(4999);
+  }
+
+  @Test
+  void serverErrorsAreRetried() throws Exception {
+    responses.add(respond(502));
+    responses.add(respond(503));
+
+    HttpResponse<Void> response = scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(requests).hasValue(3);
+  }
+
+  @Test
+  void serverErrorRetriesAreBounded() throws Exception {
+    for (int i = 0; i <= RequestScheduler.MAX_ERROR_RETRIES; i++) {
+      responses.add(respond(500));
+    }
+
+    HttpResponse<Void> response = scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(500);
+    assertThat(requests).hasValue(RequestScheduler.MAX_ERROR_RETRIES + 1);
+  }
+
+  @Test
+  void connectionResetAndTimeoutAreRetried() throws Exception {
+    // closing the exchange without response closes the connection
+    responses.add(exchange -> {});
+    responses.add(
+        exchange -> {
+          try {
+            Thread.sleep(2000);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+
+    HttpResponse<Void> response = scheduler.send(request, BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(requests).hasValue(3);
+  }
+
+  @Test
+  void nonIdempotentRequestIsNotRetried() throws Exception {
+    responses.add(respond(502));
+
+    HttpResponse<Void> response =
+        scheduler.send(
+            HttpRequest.newBuilder(request.uri()).POST(BodyPublishers.ofString("{}")).build(),
+            BodyHandlers.discarding());
+
+    assertThat(response.statusCode()).isEqualTo(502);
+    assertThat(requests).hasValue(1);
+  }
+
+  @Test
+  void retryDelayIsJitteredAndCapped() {
+    for (int retry = 0; retry < 30; retry++) {
+      assertThat(scheduler.retryDelay(retry))
+          .isBetween(
+              Duration.ZERO, Duration.ofMillis(Math.min(10_000, 10L << Math.min(retry, 20))));
+    }
+  }
+
+  static Consumer<HttpExchange> respond(int status, String... headers) {
+    return exchange -> {
+      for (int i = 0; i < headers.length; i += 2) {
+        exchange.getResponseHeaders().add(headers[i], headers[i + 1]);
+      }
+      try {
+        exchange.sendResponseHeaders(status, -1);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    };
+  }
+}